@@ -0,0 +1,227 @@
+package map;
+
+/* Copyright (C) 1995 John D. Ramsdell
+
+This file is part of Programmer's Minesweeper (PGMS).
+
+PGMS is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2, or (at your option)
+any later version.
+
+PGMS is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PGMS; see the file COPYING.  If not, write to
+the Free Software Foundation, 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The class StrategyBenchmark measures the time taken by
+ * <code>Strategy.play</code> for each strategy on a grid of board
+ * configurations. <p>
+ * Each measurement is preceded by warm-up iterations which are run
+ * but not recorded, so that the timings are not polluted by class
+ * loading and JIT compilation.  Every iteration plays a fixed number
+ * of games and the time per game is recorded.  The report gives the
+ * mean, standard deviation and range over the measured iterations,
+ * and the fraction of measured games that were won. <p>
+ * Boards are generated from a fixed seed, so every strategy plays
+ * the same sequence of games on a given configuration.
+ * <p>
+ * The benchmark lives in its own source folder so that it is not
+ * shipped with the game.  It runs on a single thread; use
+ * <code>Tournament</code> to measure throughput.
+ * @see Strategy
+ * @see Tournament
+ */
+public final class StrategyBenchmark {
+
+  private static final String[] default_strategies = {
+    "sp.SinglePointStrategy",
+    "eqn.EqnStrategy",
+    "eqn.MioStrategy",
+    "brian.FastGuessStrategy",
+    "brian.SmartGuessStrategy"
+  };
+
+  private static final int[] default_sizes = { 30, 60 };
+  private static final double[] default_densities = { 0.10, 0.15, 0.20 };
+
+  /* A board configuration: a named preset or a custom size and density. */
+  private static final class Config {
+    final String name;
+    final int mines, rows, columns;
+
+    Config(String name, int mines, int rows, int columns) {
+      this.name = name;
+      this.mines = mines;
+      this.rows = rows;
+      this.columns = columns;
+    }
+
+    static Config custom(int size, double density) {
+      return new Config("custom " + size + "x" + size + "@" + density,
+			(int)(size * size * density), size, size);
+    }
+  }
+
+  private int warmup = 5;		// Warm-up iterations
+  private int iterations = 10;		// Measured iterations
+  private int games = 100;		// Games per iteration
+  private long seed = 1997;		// Master seed for the boards
+  private int wins;			// Wins in the measured iterations
+
+  /**
+   * Benchmark entry point.
+   * @param args        program arguments
+   * <dl>
+   * <dt> <code>-s</code> <var>strategy class name</var>
+   * <dd> benchmark the given strategy; may be repeated.
+   * Defaults to every strategy.
+   * <dt> <code>-b</code>, <code>-i</code>, <code>-e</code>
+   * <dd> benchmark the beginner, intermediate or expert preset
+   * <dt> <code>-c</code> <var>size</var> <var>density</var>
+   * <dd> benchmark a custom square board; may be repeated.
+   * Without any board option, the three presets and a
+   * grid of custom boards are used.
+   * <dt> <code>-w</code> <var>iterations</var>
+   * <dd> number of warm-up iterations
+   * <dt> <code>-m</code> <var>iterations</var>
+   * <dd> number of measured iterations
+   * <dt> <code>-g</code> <var>games</var>
+   * <dd> number of games per iteration
+   * <dt> <code>-r</code> <var>seed</var>
+   * <dd> master seed for the boards
+   * </dl>
+   */
+  public static void main(String args[]) {
+    StrategyBenchmark b = new StrategyBenchmark();
+    List<String> strategies = new ArrayList<String>();
+    List<Config> configs = new ArrayList<Config>();
+
+    try {
+      for (int i = 0; i < args.length; i++)
+	if (args[i].equals("-s"))
+	  strategies.add(args[++i]);
+	else if (args[i].equals("-b"))
+	  configs.add(new Config("beginner", 10, 8, 8));
+	else if (args[i].equals("-i"))
+	  configs.add(new Config("intermediate", 40, 13, 15));
+	else if (args[i].equals("-e"))
+	  configs.add(new Config("expert", 99, 16, 30));
+	else if (args[i].equals("-c")) {
+	  int size = Integer.parseInt(args[++i]);
+	  double density = Double.parseDouble(args[++i]);
+	  configs.add(Config.custom(size, density));
+	}
+	else if (args[i].equals("-w"))
+	  b.warmup = Math.max(0, Integer.parseInt(args[++i]));
+	else if (args[i].equals("-m"))
+	  b.iterations = Math.max(1, Integer.parseInt(args[++i]));
+	else if (args[i].equals("-g"))
+	  b.games = Math.max(1, Integer.parseInt(args[++i]));
+	else if (args[i].equals("-r"))
+	  b.seed = Long.parseLong(args[++i]);
+	else {
+	  usage();
+	  return;
+	}
+    } catch (ArrayIndexOutOfBoundsException e) {
+      usage();
+      return;
+    } catch (NumberFormatException e) {
+      usage();
+      return;
+    }
+
+    if (strategies.isEmpty())
+      for (String s : default_strategies)
+	strategies.add(s);
+    if (configs.isEmpty()) {
+      configs.add(new Config("beginner", 10, 8, 8));
+      configs.add(new Config("intermediate", 40, 13, 15));
+      configs.add(new Config("expert", 99, 16, 30));
+      for (int size : default_sizes)
+	for (double density : default_densities)
+	  configs.add(Config.custom(size, density));
+    }
+
+    System.out.println("Warm-up: " + b.warmup + " iterations, measurement: "
+		       + b.iterations + " iterations, "
+		       + b.games + " games per iteration");
+    System.out.printf("%-26s %-26s %12s %10s %12s %12s %6s%n",
+		      "Strategy", "Board", "us/game", "stddev",
+		      "min", "max", "won");
+    for (String name : strategies) {
+      Strategy s;
+      try {
+	s = Class.forName(name).asSubclass(Strategy.class)
+	  .getDeclaredConstructor().newInstance();
+      } catch (Exception e) {
+	System.out.println("Cannot create strategy " + name);
+	continue;
+      }
+      for (Config c : configs)
+	b.run(name, s, c);
+    }
+  }
+
+  /* Benchmark one strategy on one board configuration. */
+  private void run(String name, Strategy s, Config c) {
+    long n = 0;
+    for (int i = 0; i < warmup; i++, n += games)
+      iteration(s, c, n);
+    double[] samples = new double[iterations];
+    wins = 0;
+    for (int i = 0; i < iterations; i++, n += games)
+      samples[i] = iteration(s, c, n);
+
+    double sum = 0.0;
+    double min = Double.MAX_VALUE;
+    double max = 0.0;
+    for (double t : samples) {
+      sum += t;
+      min = Math.min(min, t);
+      max = Math.max(max, t);
+    }
+    double mean = sum / iterations;
+    double var = 0.0;
+    for (double t : samples)
+      var += (t - mean) * (t - mean);
+    double stddev = iterations > 1 ? Math.sqrt(var / (iterations - 1)) : 0.0;
+    System.out.printf("%-26s %-26s %12.1f %10.1f %12.1f %12.1f %5.1f%%%n",
+		      name, c.name, mean, stddev, min, max,
+		      100.0 * wins / (iterations * games));
+  }
+
+  /* Play one iteration of games, numbered from n, and return
+   * microseconds per game.  Map creation is excluded from the timing. */
+  private double iteration(Strategy s, Config c, long n) {
+    long time = 0;
+    for (int g = 0; g < games; g++) {
+      MineMap m = new MineMap(c.mines, c.rows, c.columns,
+			      MineMap.game_random(seed, n + g));
+      long start = System.nanoTime();
+      s.play(m);
+      time += System.nanoTime() - start;
+      if (m.won()) wins++;
+    }
+    return (double)time / games / 1000.0;
+  }
+
+  private static void usage() {
+    System.out.println("Usage: java map.StrategyBenchmark"
+		       + " [-s strategy_name]... [-b] [-i] [-e]"
+		       + " [-c size density]..."
+		       + " [-w warmup] [-m iterations] [-g games]"
+		       + " [-r seed]");
+  }
+}
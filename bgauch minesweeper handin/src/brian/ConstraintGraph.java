@@ -0,0 +1,232 @@
+package brian;
+
+/* Copyright (C) 1995 John D. Ramsdell
+
+This file is part of Programmer's Minesweeper (PGMS).
+
+PGMS is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2, or (at your option)
+any later version.
+
+PGMS is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PGMS; see the file COPYING.  If not, write to
+the Free Software Foundation, 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+*/
+
+import java.util.Arrays;
+
+/**
+ * The constraints of a game, and for each square, the constraints
+ * it is a variable of.
+ *
+ * Squares are numbered y * columns + x, and constraints by the slot
+ * they are stored in, so the relation is kept in int arrays and
+ * changing it makes no objects. Each square has a list of links to
+ * its constraints, in the order they were put; links taken off a
+ * square are reused.
+ *
+ * The squares with constraints are also kept in a list, in the order
+ * each got its first one, like the keys of a LinkedHashMultimap.
+ */
+public final class ConstraintGraph {
+	private final int columns;
+
+	// constraints by slot
+	private SumConstraint[] constraints = new SumConstraint[64];
+	private boolean[] deleted = new boolean[64];
+	private int slots;
+
+	// a link holds the slot of a constraint and the next link of its square
+	private int[] linkSlot = new int[256];
+	private int[] linkNext = new int[256];
+	private int links;
+	private int free = -1;
+
+	// first and last links of each square, or -1
+	private final int[] first;
+	private final int[] last;
+
+	// squares with constraints; the extra entry at the end heads the list
+	private final int[] nextSquare;
+	private final int[] prevSquare;
+	private int squares;
+
+	public ConstraintGraph(int rows, int columns){
+		this.columns = columns;
+		int n = rows * columns;
+		first = new int[n];
+		last = new int[n];
+		Arrays.fill(first, -1);
+		Arrays.fill(last, -1);
+		nextSquare = new int[n + 1];
+		prevSquare = new int[n + 1];
+		nextSquare[n] = n;
+		prevSquare[n] = n;
+	}
+
+	public int square(int x, int y){
+		return y * columns + x;
+	}
+
+	public int x(int square){
+		return square % columns;
+	}
+
+	public int y(int square){
+		return square / columns;
+	}
+
+	// store a constraint, returning its slot
+	public int add(SumConstraint c){
+		if(slots == constraints.length){
+			constraints = Arrays.copyOf(constraints, 2 * slots);
+			deleted = Arrays.copyOf(deleted, 2 * slots);
+		}
+		constraints[slots] = c;
+		return slots++;
+	}
+
+	// drop a constraint from the constraints of the game; squares may
+	// still have links to it, as a square is not taken out of the
+	// constraints it is substituted out of
+	public void delete(int slot){
+		deleted[slot] = true;
+	}
+
+	public boolean isDeleted(int slot){
+		return deleted[slot];
+	}
+
+	// slots used so far, deleted or not
+	public int slots(){
+		return slots;
+	}
+
+	public SumConstraint constraint(int slot){
+		return constraints[slot];
+	}
+
+	// make a square a variable of the constraint in a slot
+	public void put(int square, int slot){
+		int l = free;
+		if(l >= 0){
+			free = linkNext[l];
+		}
+		else{
+			if(links == linkNext.length){
+				linkSlot = Arrays.copyOf(linkSlot, 2 * links);
+				linkNext = Arrays.copyOf(linkNext, 2 * links);
+			}
+			l = links++;
+		}
+		linkSlot[l] = slot;
+		linkNext[l] = -1;
+		if(first[square] < 0){
+			first[square] = l;
+			link(square);
+		}
+		else{
+			linkNext[last[square]] = l;
+		}
+		last[square] = l;
+	}
+
+	// take a square out of the constraint in a slot
+	public void remove(int square, int slot){
+		int p = -1;
+		for(int l = first[square]; l >= 0; p = l, l = linkNext[l]){
+			if(linkSlot[l] == slot){
+				if(p < 0){
+					first[square] = linkNext[l];
+				}
+				else{
+					linkNext[p] = linkNext[l];
+				}
+				if(last[square] == l){
+					last[square] = p;
+				}
+				linkNext[l] = free;
+				free = l;
+				if(first[square] < 0){
+					unlink(square);
+				}
+				return;
+			}
+		}
+	}
+
+	// take a square out of all its constraints
+	public void removeAll(int square){
+		if(first[square] >= 0){
+			linkNext[last[square]] = free;
+			free = first[square];
+			first[square] = -1;
+			last[square] = -1;
+			unlink(square);
+		}
+	}
+
+	public boolean isEmpty(int square){
+		return first[square] < 0;
+	}
+
+	// the first link of a square, or -1
+	public int firstLink(int square){
+		return first[square];
+	}
+
+	// the link after l on its square, or -1
+	public int nextLink(int l){
+		return linkNext[l];
+	}
+
+	public int slotAt(int l){
+		return linkSlot[l];
+	}
+
+	public SumConstraint constraintAt(int l){
+		return constraints[linkSlot[l]];
+	}
+
+	// number of squares with constraints
+	public int size(){
+		return squares;
+	}
+
+	// the square which first got a constraint, or -1
+	public int firstSquare(){
+		return end(nextSquare[first.length]);
+	}
+
+	// the square with constraints after a square, or -1
+	public int nextSquare(int square){
+		return end(nextSquare[square]);
+	}
+
+	private int end(int square){
+		return square == first.length ? -1 : square;
+	}
+
+	private void link(int square){
+		int n = first.length;
+		int p = prevSquare[n];
+		nextSquare[p] = square;
+		prevSquare[square] = p;
+		nextSquare[square] = n;
+		prevSquare[n] = square;
+		squares++;
+	}
+
+	private void unlink(int square){
+		nextSquare[prevSquare[square]] = nextSquare[square];
+		prevSquare[nextSquare[square]] = prevSquare[square];
+		squares--;
+	}
+}
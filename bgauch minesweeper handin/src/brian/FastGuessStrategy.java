@@ -21,14 +21,9 @@ Boston, MA 02111-1307, USA.
 */
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.Queue;
-import java.util.Set;
 
 //import map.*;
 
@@ -39,20 +34,19 @@ import java.util.Set;
 
 import map.Map;
 import map.Strategy;
-
-import com.google.common.collect.*;
+import map.UnprobedCells;
 
 /**
  * Maintain a list of updated squares, to consider probing or flagging.
- * Maintain a multi-map of squares to constraints.
+ * Maintain a graph of squares and the constraints on them.
  * 
  * When a square is probed, a constraint is added.
  * Try to simplify constraints with the new constraint.
- * Use the multi-map to check for overlapping constraints.
+ * Use the graph to check for overlapping constraints.
  * Then queue the neighbors of the new constraint for consideration.
  * 
  * When a permanent flag is added, the corresponding constraints from
- * the multi-map are simplified. Discard empty constraints.
+ * the graph are simplified. Discard empty constraints.
  * Then queue elements of these constraints.
  * 
  * When popping from the :
@@ -75,17 +69,12 @@ public final class FastGuessStrategy implements Strategy {
 	
 	private boolean debug = false;
 	
-	// when removing from constraints, also remove all pointers to it in sToC
-	private Multimap<Square, SumConstraint> sToC;
-	private List<SumConstraint> constraints;
-	
-	// treat these two as one combined datatype, a unique queue
-	private Queue<Square> updatedSquares;
-	private Set<Square> updatedSquareSet;
+	// the constraints, and for each square the constraints on it
+	private ConstraintGraph graph;
 	
-	// treat these two as one combined datatype, a unique queue
-	private Queue<SumConstraint> updatedConstraints;
-	private Set<SumConstraint> updatedConstraintSet;
+	// squares, and slots of constraints, to look at again
+	private UniqueQueue updatedSquares;
+	private UniqueQueue updatedConstraints;
 	
 	// keep track of guesses(flags) and constraints
 	private List<ArrayList<Square>> myMap = new ArrayList<ArrayList<Square>>();
@@ -93,17 +82,14 @@ public final class FastGuessStrategy implements Strategy {
 	private int probed;
 	private double bombDensity;
 	private boolean bombDensityIsDirty;
+	// squares which are neither probed nor marked, kept up to date by the map
+	private UnprobedCells unknown;
 	
-	private void initGlobals(){
-		// when removing from constraints, also remove all pointers to it in sToC
-		sToC = LinkedHashMultimap.create();
-		constraints = new ArrayList<SumConstraint>();
-		
-		updatedSquares = new LinkedList<Square>();
-		updatedSquareSet = new HashSet<Square>();
+	private void initGlobals(Map m){
+		graph = new ConstraintGraph(m.rows(), m.columns());
 		
-		updatedConstraints = new LinkedList<SumConstraint>();
-		updatedConstraintSet = new HashSet<SumConstraint>();
+		updatedSquares = new UniqueQueue();
+		updatedConstraints = new UniqueQueue();
 		bombDensityIsDirty = true;
 		marked = 0;
 		probed = 0;
@@ -124,8 +110,9 @@ public final class FastGuessStrategy implements Strategy {
 	}
 	
 	public void play(Map m) {
-		initGlobals();
+		initGlobals(m);
 		initMyMap(m);
+		unknown = new UnprobedCells(m, true);
 		while(!m.done()){
 			if(debug){
 				printSquareQueue();
@@ -133,14 +120,14 @@ public final class FastGuessStrategy implements Strategy {
 			}
 			if(!updatedSquares.isEmpty())
 			{
-				Square s = updatedSquares.poll();
-				checkConstraints(m, s);
-				updatedSquareSet.remove(s);
+				int k = updatedSquares.poll();
+				checkConstraints(m, square(k));
+				updatedSquares.remove(k);
 			}
 			else if(!updatedConstraints.isEmpty()){
-				SumConstraint c = updatedConstraints.poll();
-				simplifyConstraints(c);
-				updatedConstraintSet.remove(c);
+				int slot = updatedConstraints.poll();
+				simplifyConstraints(slot);
+				updatedConstraints.remove(slot);
 			}
 			else{
 				if(debug){
@@ -150,6 +137,7 @@ public final class FastGuessStrategy implements Strategy {
 				//probeRandomSquare(m);
 			}
 		}
+		unknown.detach();
 		if(debug){
 			System.out.println("**************Game Over****************");
 			printSquareQueue();
@@ -159,41 +147,33 @@ public final class FastGuessStrategy implements Strategy {
 		}
 	}
 	
+	// assume it is a bomb, or assume it is not a bomb
+	// then, check for broken constraint i.e. a contradiction
+	private boolean hasContradiction(Map m, Square s, boolean isBomb){
+		int k = graph.square(s.getX(), s.getY());
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
+			SumConstraint c = graph.constraintAt(l);
+			if(c.isViolated(s.getX(), s.getY(), isBomb)){
+				if(debug){
+					System.out.println("Violated: " + c);
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	private void checkConstraints(Map m, Square s){
-		Collection<SumConstraint> cs = sToC.get(s);
-		
 		if(m.look(s.getX(), s.getY()) != Map.MARKED){
 			// temporarily assume it is a bomb
-			s.setFlagged(true);
-			Set<SumConstraint> violated = new HashSet<SumConstraint>();
-			for(SumConstraint c : cs){
-				if(c.isViolated()){
-					violated.add(c);
-					if(debug){
-						System.out.println("Violated: " + c);
-					}
-				}
-			}
 			// contradiction ==> safe
-			if(violated.size() > 0){
+			if(hasContradiction(m,s,true)){
 				Probe(m, s.getX(), s.getY());
 			}
-			// end assumption
-			s.setFlagged(false);
 			
 			// temporarily assume it is not a bomb
-			s.setSafeFlagged(true);
-			violated = new HashSet<SumConstraint>();
-			for(SumConstraint c : cs){
-				if(c.isViolated()){
-					violated.add(c);
-					if(debug){
-						System.out.println("Violated: " + c);
-					}
-				}
-			}
 			// contradiction ==> permanent flag
-			if(violated.size() > 0){
+			if(hasContradiction(m,s,false)){
 				// update constraints
 				s.setFlagged(true);
 				m.mark(s.getX(), s.getY());
@@ -204,85 +184,99 @@ public final class FastGuessStrategy implements Strategy {
 		}
 	}
 	
-	private Set<Square> getNeighbors(Map m, int x, int y){
-		Set<Square> neighbors = new HashSet<Square>();
-		for(int i = x-1; i <= x+1; i++){
-			for(int j = y-1; j <= y+1; j++){
-				if(m.look(i, j) == Map.UNPROBED
-						|| m.look(i, j) == Map.MARKED){
-					Square s = myMap.get(i).get(j);
-					//System.out.println(s);
-					neighbors.add(s);
-				}
-			}
+	// unprobed or marked neighbors, as a mask for a SumConstraint
+	// with its corner at (x-1, y-1)
+	private long getNeighbors(Map m, int x, int y){
+		int n = m.neighborhood(x, y);
+		// unprobed or marked, one bit per neighbor
+		int unknowns = (n | (n >> 9)) & Map.NEAR_UNPROBED;
+		return SumConstraint.neighbors(unknowns);
+	}
+	
+	// the square of the lowest bit of a mask of c
+	private Square square(SumConstraint c, long mask){
+		return myMap.get(c.varX(mask)).get(c.varY(mask));
+	}
+	
+	// the square numbered k by the graph
+	private Square square(int k){
+		return myMap.get(graph.x(k)).get(graph.y(k));
+	}
+	
+	// queue the squares of a constraint
+	private void updateSquares(SumConstraint c){
+		for(long b = c.vars; b != 0; b &= b - 1){
+			updatedSquares.add(graph.square(c.varX(b), c.varY(b)));
 		}
-		return neighbors;
 	}
 	
 	private void printConstraints(){
 		System.out.println("-------------Constraints---------------------");
-		for(SumConstraint c : constraints){
-			System.out.println(c);
+		for(int slot = 0; slot < graph.slots(); slot++){
+			if(!graph.isDeleted(slot)){
+				System.out.println(graph.constraint(slot));
+			}
+		}
+	}
+	
+	private void printConstraints(int k){
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
+			System.out.println(graph.constraintAt(l));
 		}
 	}
 	
 	private void printSToC(){
 		System.out.println("-------------SToC---------------------");
-		Set<Square> keys = new HashSet<Square>(sToC.keys());
-		for(Square s : keys){
-			System.out.println("---S(" + s.getX() + "," + s.getY() + "):---");
-			for(SumConstraint c : sToC.get(s)){
-				System.out.println(c);
-			}
+		for(int k = graph.firstSquare(); k >= 0; k = graph.nextSquare(k)){
+			System.out.println("---S(" + graph.x(k) + "," + graph.y(k) + "):---");
+			printConstraints(k);
 			System.out.println("--------");
 		}
 	}
 	
 	private void printSquareQueue(){
 		System.out.println("-----------------Square Queue-------------------------");
-		for(Square s : updatedSquares){
-			System.out.println(s);
+		for(int i = 0; i < updatedSquares.size(); i++){
+			System.out.println(square(updatedSquares.get(i)));
 		}
 	}
 	
 	private void printConstraintQueue(){
 		System.out.println("-----------------Constraint Queue-------------------------");
-		for(SumConstraint s : updatedConstraints){
-			System.out.println(s);
+		for(int i = 0; i < updatedConstraints.size(); i++){
+			System.out.println(graph.constraint(updatedConstraints.get(i)));
 		}
 	}
 	
 	private void addConstraint(Map m, SumConstraint c){
-		constraints.add(c);
-		Set<Square> bombs = new HashSet<Square>();
-		for(Square n : c.vars){
+		int slot = graph.add(c);
+		long bombs = 0;
+		for(long b = c.vars; b != 0; b &= b - 1){
+			Square n = square(c, b);
 			// immediately simplify if one or more is flagged
 			if(m.look(n.getX(), n.getY()) == Map.MARKED){
-				bombs.add(n);
+				bombs |= Long.lowestOneBit(b);
 			}
 			else{
-				sToC.put(n, c);
-				if(updatedSquareSet.add(n)){
-					updatedSquares.add(n);
-				}
+				int k = graph.square(n.getX(), n.getY());
+				graph.put(k, slot);
+				updatedSquares.add(k);
 			}
 		}
-		trySubstitution(c, bombs, bombs.size());
-		if(updatedConstraintSet.add(c)){
-			updatedConstraints.add(c);
-		}
+		trySubstitution(slot, c.x, c.y, bombs, Long.bitCount(bombs));
+		updatedConstraints.add(slot);
 	}
 	
 	// only called on empty constraints
-	private void removeConstraint(SumConstraint c){
-		for(Square n : c.vars){
+	private void removeConstraint(int slot){
+		SumConstraint c = graph.constraint(slot);
+		for(long b = c.vars; b != 0; b &= b - 1){
+			int k = graph.square(c.varX(b), c.varY(b));
 			System.out.println("oops2");
-			sToC.remove(n, c);
-			if(updatedSquareSet.add(n)){
-				updatedSquares.add(n);
-			}
+			graph.remove(k, slot);
+			updatedSquares.add(k);
 		}
-		constraints.remove(c);
+		graph.delete(slot);
 	}
 	
 	private int Probe(Map m, int x, int y){
@@ -296,37 +290,34 @@ public final class FastGuessStrategy implements Strategy {
 		int q = m.probe(x, y);
 		if(q >= 0){
 			int sum = q;
-			Set<Square> neighbors = getNeighbors(m, x, y);
-			SumConstraint c = new SumConstraint(neighbors, sum);
+			long neighbors = getNeighbors(m, x, y);
+			SumConstraint c = new SumConstraint(x-1, y-1, neighbors, sum);
 			addConstraint(m, c);
 			probed++;
 			bombDensityIsDirty = true;
 		}
 		// remove old square
-		Square s = myMap.get(x).get(y);
-		for(SumConstraint c : sToC.get(s)){
-			Set<Square> l = new HashSet<Square>();
-			l.add(s);
+		int k = graph.square(x, y);
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
 			// substitute a single square for a non-bomb
-			trySubstitution(c, l, 0);
+			trySubstitution(graph.slotAt(l), x, y, 1L, 0);
+			SumConstraint c = graph.constraintAt(l);
 			if(c.maxSum < 0){
 				System.out.println("mis-shrunk: " + c);
 				System.out.println("oops0.0");
 			}
 		}
-		sToC.removeAll(s);
+		graph.removeAll(k);
 		return q;
 	}
 	
 	private void Flagged(Map m, int x, int y){
 		// remove square
-		Square s = myMap.get(x).get(y);
-		Collection<SumConstraint> constraintsToUpdate = sToC.get(s);
-		for(SumConstraint c : constraintsToUpdate){
-			Set<Square> l = new HashSet<Square>();
-			l.add(s);
+		int k = graph.square(x, y);
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
 			// substitute a single square for a bomb
-			trySubstitution(c, l, 1);
+			trySubstitution(graph.slotAt(l), x, y, 1L, 1);
+			SumConstraint c = graph.constraintAt(l);
 			if(c.maxSum < 0){
 				System.out.println("mis-shrunk: " + c);
 				System.out.println("oops0.1");
@@ -334,27 +325,37 @@ public final class FastGuessStrategy implements Strategy {
 		}
 		marked++;
 		bombDensityIsDirty = true;
-		sToC.removeAll(s);
+		graph.removeAll(k);
 	}
 	
-	public void simplifyConstraints(SumConstraint new_c){
+	public void simplifyConstraints(int new_slot){
+		SumConstraint new_c = graph.constraint(new_slot);
 		// lazy removal
-		if(new_c.vars.isEmpty()){
-			removeConstraint(new_c);
+		if(new_c.isEmpty()){
+			removeConstraint(new_slot);
 			return;
 		}
 		if(debug){
 			System.out.println("Simplifying: " + new_c);
 		}
-		for(SumConstraint c : constraints){
+		// only a constraint with all the squares of new_c can be
+		// simplified, and it is on the graph's list for each of them,
+		// so look at the list for one; lists are in order of slot
+		int k = graph.square(new_c.varX(new_c.vars), new_c.varY(new_c.vars));
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
+			int slot = graph.slotAt(l);
 			// substitute
-			if(new_c.equals(c)){
+			if(graph.isDeleted(slot)){
+				continue;
+			}
+			else if(slot == new_slot){
 				if(debug){
 					System.out.println("its me!");
 				}
 			}
 			else{
-				trySubstitution(c, new_c.vars, new_c.maxSum);
+				trySubstitution(slot, new_c.x, new_c.y, new_c.vars, new_c.maxSum);
+				SumConstraint c = graph.constraint(slot);
 				if(c.maxSum < 0){
 					System.out.println("mis-shrunk: " + c);
 					System.out.println("oops0.2");
@@ -364,34 +365,28 @@ public final class FastGuessStrategy implements Strategy {
 	}
 	
 	/*
+	 * ss is a mask of squares for a SumConstraint with its corner at (x, y)
 	 * returns true if the constraint is now empty
 	 */
-	private boolean trySubstitution(SumConstraint c, Set<Square> ss, int numMines){
+	private boolean trySubstitution(int slot, int x, int y, long ss, int numMines){
+		SumConstraint c = graph.constraint(slot);
 		//if(!ss.equals(c.vars)){
 		boolean success = false;
-		if(c.vars.containsAll(ss)){
+		if(c.containsAll(x, y, ss)){
 			success = true;
 			if(debug){
-				System.out.println("Shrinking: " + c + " by " + ss + ", subtracting " + numMines);
-			}
-			for(Square s : ss){
-				c.vars.remove(s);
-				//sToC.remove(s, c);
+				System.out.println("Shrinking: " + c + " by " + new SumConstraint(x, y, ss, 0)
+					+ ", subtracting " + numMines);
 			}
+			c.removeAll(x, y, ss);
 			c.maxSum = c.maxSum-numMines;
 			c.minSum = c.minSum-numMines;
 			if(c.maxSum < 0){
 				System.out.println("mis-shrunk: " + c);
 			}
 			else{
-				if(updatedConstraintSet.add(c)){
-					updatedConstraints.add(c);
-				}
-				for(Square s : c.vars){
-					if(updatedSquareSet.add(s)){
-						updatedSquares.add(s);
-					}
-				}
+				updatedConstraints.add(slot);
+				updateSquares(c);
 			}
 		}
 		return success;
@@ -424,17 +419,18 @@ public final class FastGuessStrategy implements Strategy {
 	// get rough probability without enumerating over all possible board states
 	private double getBombProbability(Map m, Square s){
 		double mp = getMapBombDensity(m);
-		Collection<SumConstraint> cs = sToC.get(s);
+		int k = graph.square(s.getX(), s.getY());
 		double cp = 0.0;
-		for (SumConstraint c : cs){
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
+			SumConstraint c = graph.constraintAt(l);
 			int b = c.maxSum;
-			int n = c.vars.size();
+			int n = c.size();
 			double density = (double)b/(double)n;
 			if(density > cp){
 				cp = density;
 			}
 		}
-		if(!cs.isEmpty()){
+		if(!graph.isEmpty(k)){
 			if(cp == 0.0){
 				System.out.println("whoops");
 			}
@@ -465,24 +461,23 @@ public final class FastGuessStrategy implements Strategy {
 	private boolean probeSafestSquare(Map m){
 		double safestP = 9999.0;
 		Square safestS = null;
-		for(int i = 0; i < m.columns(); i++){
-			for(int j = 0; j < m.rows(); j++){
-				Square s = myMap.get(i).get(j);
-				if(m.look(i, j) == Map.UNPROBED){
-					double ps = getBombProbability(m, s);
-					if(ps > 1.0){
-						System.out.println("whoops");
-					}
-					if(ps < safestP){
-						safestP = ps;
-						safestS = s;
-					}
-					// use centrality as tie-breaker
-					else if(ps == safestP){
-						if(centrality(m,i,j) > centrality(m, safestS.getX(), safestS.getY())){
-							safestS = s;
-						}
-					}
+		// visit unprobed squares column by column
+		for(int k = unknown.first(); k >= 0; k = unknown.next(k)){
+			int i = unknown.x(k);
+			int j = unknown.y(k);
+			Square s = myMap.get(i).get(j);
+			double ps = getBombProbability(m, s);
+			if(ps > 1.0){
+				System.out.println("whoops");
+			}
+			if(ps < safestP){
+				safestP = ps;
+				safestS = s;
+			}
+			// use centrality as tie-breaker
+			else if(ps == safestP){
+				if(centrality(m,i,j) > centrality(m, safestS.getX(), safestS.getY())){
+					safestS = s;
 				}
 			}
 		}
@@ -491,12 +486,12 @@ public final class FastGuessStrategy implements Strategy {
 			return false;
 		}
 		else{
-			Collection<SumConstraint> cs = sToC.get(safestS);
 			if(debug){
 				printSToC();
 				System.out.println("Guessing at " + safestS.getX() + "," + safestS.getY()
 					+ " with p=" + safestP);
-				System.out.println("Guessed Square has constraints:\n" + cs);
+				System.out.println("Guessed Square has constraints:");
+				printConstraints(graph.square(safestS.getX(), safestS.getY()));
 			}
 			
 			int q = Probe(m, safestS.getX(), safestS.getY());
@@ -20,14 +20,15 @@ the Free Software Foundation, 59 Temple Place - Suite 330,
 Boston, MA 02111-1307, USA.
 */
 
+import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.Queue;
 import java.util.Set;
 
 //import map.*;
@@ -41,20 +42,19 @@ import java.util.Set;
 
 import map.Map;
 import map.Strategy;
-
-import com.google.common.collect.*;
+import map.UnprobedCells;
 
 /**
  * Maintain a list of updated squares, to consider probing or flagging.
- * Maintain a multi-map of squares to constraints.
+ * Maintain a graph of squares and the constraints on them.
  * 
  * When a square is probed, a constraint is added.
  * Try to simplify constraints with the new constraint.
- * Use the multi-map to check for overlapping constraints.
+ * Use the graph to check for overlapping constraints.
  * Then queue the neighbors of the new constraint for consideration.
  * 
  * When a permanent flag is added, the corresponding constraints from
- * the multi-map are simplified. Discard empty constraints.
+ * the graph are simplified. Discard empty constraints.
  * Then queue elements of these constraints.
  * 
  * When popping from the :
@@ -76,20 +76,22 @@ import com.google.common.collect.*;
 public final class SmartGuessStrategy implements Strategy {
 	
 	private boolean debug = false;
-	// largest frontier allowed for SmartGuess calculation
-	private int maxFrontier = 30;
-	
-	// when removing from constraints, also remove all pointers to it in sToC
-	private Multimap<Square, SumConstraint> sToC;
-	private List<SumConstraint> constraints;
+	// largest component of the frontier allowed for SmartGuess calculation;
+	// a component of n squares has at most 2^n assignments, and counts
+	// must fit in a long
+	private int maxComponent = 62;
+	// calls of countStates allowed in one guess; components are counted
+	// smallest first, and those the budget does not reach are estimated
+	private long maxWork = 1L << 20;
+	// calls of countStates left in this guess, negative once it runs out
+	private long work;
 	
-	// treat these two as one combined datatype, a unique queue
-	private Queue<Square> updatedSquares;
-	private Set<Square> updatedSquareSet;
+	// the constraints, and for each square the constraints on it
+	private ConstraintGraph graph;
 	
-	// treat these two as one combined datatype, a unique queue
-	private Queue<SumConstraint> updatedConstraints;
-	private Set<SumConstraint> updatedConstraintSet;
+	// squares, and slots of constraints, to look at again
+	private UniqueQueue updatedSquares;
+	private UniqueQueue updatedConstraints;
 	
 	// keep track of guesses(flags) and constraints
 	private List<ArrayList<Square>> myMap = new ArrayList<ArrayList<Square>>();
@@ -97,17 +99,18 @@ public final class SmartGuessStrategy implements Strategy {
 	private int probed;
 	private double bombDensity;
 	private boolean bombDensityIsDirty;
+	// squares which are neither probed nor marked, kept up to date by the map
+	private UnprobedCells unknown;
+	// position in the frontier of each square, -1 outside getComponents
+	private int[] frontierIndex;
 	
-	private void initGlobals(){
-		// when removing from constraints, also remove all pointers to it in sToC
-		sToC = LinkedHashMultimap.create();
-		constraints = new ArrayList<SumConstraint>();
-		
-		updatedSquares = new LinkedList<Square>();
-		updatedSquareSet = new HashSet<Square>();
+	private void initGlobals(Map m){
+		graph = new ConstraintGraph(m.rows(), m.columns());
+		frontierIndex = new int[m.rows() * m.columns()];
+		Arrays.fill(frontierIndex, -1);
 		
-		updatedConstraints = new LinkedList<SumConstraint>();
-		updatedConstraintSet = new HashSet<SumConstraint>();
+		updatedSquares = new UniqueQueue();
+		updatedConstraints = new UniqueQueue();
 		bombDensityIsDirty = true;
 		marked = 0;
 		probed = 0;
@@ -128,8 +131,9 @@ public final class SmartGuessStrategy implements Strategy {
 	}
 	
 	public void play(Map m) {
-		initGlobals();
+		initGlobals(m);
 		initMyMap(m);
+		unknown = new UnprobedCells(m, true);
 		while(!m.done()){
 			if(debug){
 				printSquareQueue();
@@ -137,14 +141,14 @@ public final class SmartGuessStrategy implements Strategy {
 			}
 			if(!updatedSquares.isEmpty())
 			{
-				Square s = updatedSquares.poll();
-				checkConstraints(m, s);
-				updatedSquareSet.remove(s);
+				int k = updatedSquares.poll();
+				checkConstraints(m, square(k));
+				updatedSquares.remove(k);
 			}
 			else if(!updatedConstraints.isEmpty()){
-				SumConstraint c = updatedConstraints.poll();
-				simplifyConstraints(c);
-				updatedConstraintSet.remove(c);
+				int slot = updatedConstraints.poll();
+				simplifyConstraints(slot);
+				updatedConstraints.remove(slot);
 			}
 			else{
 				if(debug){
@@ -154,6 +158,7 @@ public final class SmartGuessStrategy implements Strategy {
 				//probeRandomSquare(m);
 			}
 		}
+		unknown.detach();
 		if(debug){
 			System.out.println("**************Game Over****************");
 			printSquareQueue();
@@ -165,40 +170,46 @@ public final class SmartGuessStrategy implements Strategy {
 	
 	// assume it is a bomb, or assume it is not a bomb
 	// then, check for broken constraint i.e. a contradiction
-	private Set<SumConstraint> getContradictions(Map m, Square s, boolean isBomb){
-		Collection<SumConstraint> cs = sToC.get(s);
-		s.setFlagged(isBomb);
-		s.setSafeFlagged(!isBomb);
-		Set<SumConstraint> violated = new HashSet<SumConstraint>();
-		for(SumConstraint c : cs){
-			if(c.isViolated()){
-				violated.add(c);
+	private boolean hasContradiction(Map m, Square s, boolean isBomb){
+		int k = graph.square(s.getX(), s.getY());
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
+			SumConstraint c = graph.constraintAt(l);
+			if(c.isViolated(s.getX(), s.getY(), isBomb)){
 				if(debug){
 //					System.out.println("Violated: " + c);
 				}
+				return true;
 			}
 		}
-		// end assumptions
-		s.setFlagged(false);
-		s.setSafeFlagged(false);
-		return violated;
+		return false;
+	}
+	
+	// assume a square is a bomb, or is safe, in all its constraints
+	private void assume(Square s, boolean isBomb){
+		int k = graph.square(s.getX(), s.getY());
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
+			graph.constraintAt(l).assume(s.getX(), s.getY(), isBomb);
+		}
+	}
+	
+	private void release(Square s){
+		int k = graph.square(s.getX(), s.getY());
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
+			graph.constraintAt(l).release(s.getX(), s.getY());
+		}
 	}
 	
 	private void checkConstraints(Map m, Square s){
-		Collection<SumConstraint> cs = sToC.get(s);
-		
 		if(m.look(s.getX(), s.getY()) != Map.MARKED){
 			// temporarily assume it is a bomb
-			Set<SumConstraint> violated = getContradictions(m,s,true);
 			// contradiction ==> safe
-			if(violated.size() > 0){
+			if(hasContradiction(m,s,true)){
 				Probe(m, s.getX(), s.getY());
 			}
 			
 			// temporarily assume it is not a bomb
-			violated = getContradictions(m,s,false);
 			// contradiction ==> permanent flag
-			if(violated.size() > 0){
+			if(hasContradiction(m,s,false)){
 				// update constraints
 				s.setFlagged(true);
 				m.mark(s.getX(), s.getY());
@@ -209,85 +220,99 @@ public final class SmartGuessStrategy implements Strategy {
 		}
 	}
 	
-	private Set<Square> getNeighbors(Map m, int x, int y){
-		Set<Square> neighbors = new HashSet<Square>();
-		for(int i = x-1; i <= x+1; i++){
-			for(int j = y-1; j <= y+1; j++){
-				if(m.look(i, j) == Map.UNPROBED
-						|| m.look(i, j) == Map.MARKED){
-					Square s = myMap.get(i).get(j);
-					//System.out.println(s);
-					neighbors.add(s);
-				}
-			}
+	// unprobed or marked neighbors, as a mask for a SumConstraint
+	// with its corner at (x-1, y-1)
+	private long getNeighbors(Map m, int x, int y){
+		int n = m.neighborhood(x, y);
+		// unprobed or marked, one bit per neighbor
+		int unknowns = (n | (n >> 9)) & Map.NEAR_UNPROBED;
+		return SumConstraint.neighbors(unknowns);
+	}
+	
+	// the square of the lowest bit of a mask of c
+	private Square square(SumConstraint c, long mask){
+		return myMap.get(c.varX(mask)).get(c.varY(mask));
+	}
+	
+	// the square numbered k by the graph
+	private Square square(int k){
+		return myMap.get(graph.x(k)).get(graph.y(k));
+	}
+	
+	// queue the squares of a constraint
+	private void updateSquares(SumConstraint c){
+		for(long b = c.vars; b != 0; b &= b - 1){
+			updatedSquares.add(graph.square(c.varX(b), c.varY(b)));
 		}
-		return neighbors;
 	}
 	
 	private void printConstraints(){
 		System.out.println("-------------Constraints---------------------");
-		for(SumConstraint c : constraints){
-			System.out.println(c);
+		for(int slot = 0; slot < graph.slots(); slot++){
+			if(!graph.isDeleted(slot)){
+				System.out.println(graph.constraint(slot));
+			}
+		}
+	}
+	
+	private void printConstraints(int k){
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
+			System.out.println(graph.constraintAt(l));
 		}
 	}
 	
 	private void printSToC(){
 		System.out.println("-------------SToC---------------------");
-		Set<Square> keys = new HashSet<Square>(sToC.keys());
-		for(Square s : keys){
-			System.out.println("---S(" + s.getX() + "," + s.getY() + "):---");
-			for(SumConstraint c : sToC.get(s)){
-				System.out.println(c);
-			}
+		for(int k = graph.firstSquare(); k >= 0; k = graph.nextSquare(k)){
+			System.out.println("---S(" + graph.x(k) + "," + graph.y(k) + "):---");
+			printConstraints(k);
 			System.out.println("--------");
 		}
 	}
 	
 	private void printSquareQueue(){
 		System.out.println("-----------------Square Queue-------------------------");
-		for(Square s : updatedSquares){
-			System.out.println(s);
+		for(int i = 0; i < updatedSquares.size(); i++){
+			System.out.println(square(updatedSquares.get(i)));
 		}
 	}
 	
 	private void printConstraintQueue(){
 		System.out.println("-----------------Constraint Queue-------------------------");
-		for(SumConstraint s : updatedConstraints){
-			System.out.println(s);
+		for(int i = 0; i < updatedConstraints.size(); i++){
+			System.out.println(graph.constraint(updatedConstraints.get(i)));
 		}
 	}
 	
 	private void addConstraint(Map m, SumConstraint c){
-		constraints.add(c);
-		Set<Square> bombs = new HashSet<Square>();
-		for(Square n : c.vars){
+		int slot = graph.add(c);
+		long bombs = 0;
+		for(long b = c.vars; b != 0; b &= b - 1){
+			Square n = square(c, b);
 			// immediately simplify if one or more is flagged
 			if(m.look(n.getX(), n.getY()) == Map.MARKED){
-				bombs.add(n);
+				bombs |= Long.lowestOneBit(b);
 			}
 			else{
-				sToC.put(n, c);
-				if(updatedSquareSet.add(n)){
-					updatedSquares.add(n);
-				}
+				int k = graph.square(n.getX(), n.getY());
+				graph.put(k, slot);
+				updatedSquares.add(k);
 			}
 		}
-		trySubstitution(c, bombs, bombs.size());
-		if(updatedConstraintSet.add(c)){
-			updatedConstraints.add(c);
-		}
+		trySubstitution(slot, c.x, c.y, bombs, Long.bitCount(bombs));
+		updatedConstraints.add(slot);
 	}
 	
 	// only called on empty constraints
-	private void removeConstraint(SumConstraint c){
-		for(Square n : c.vars){
+	private void removeConstraint(int slot){
+		SumConstraint c = graph.constraint(slot);
+		for(long b = c.vars; b != 0; b &= b - 1){
+			int k = graph.square(c.varX(b), c.varY(b));
 			System.out.println("oops2");
-			sToC.remove(n, c);
-			if(updatedSquareSet.add(n)){
-				updatedSquares.add(n);
-			}
+			graph.remove(k, slot);
+			updatedSquares.add(k);
 		}
-		constraints.remove(c);
+		graph.delete(slot);
 	}
 	
 	private int Probe(Map m, int x, int y){
@@ -301,37 +326,34 @@ public final class SmartGuessStrategy implements Strategy {
 		int q = m.probe(x, y);
 		if(q >= 0){
 			int sum = q;
-			Set<Square> neighbors = getNeighbors(m, x, y);
-			SumConstraint c = new SumConstraint(neighbors, sum);
+			long neighbors = getNeighbors(m, x, y);
+			SumConstraint c = new SumConstraint(x-1, y-1, neighbors, sum);
 			addConstraint(m, c);
 			probed++;
 			bombDensityIsDirty = true;
 		}
 		// remove old square
-		Square s = myMap.get(x).get(y);
-		for(SumConstraint c : sToC.get(s)){
-			Set<Square> l = new HashSet<Square>();
-			l.add(s);
+		int k = graph.square(x, y);
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
 			// substitute a single square for a non-bomb
-			trySubstitution(c, l, 0);
+			trySubstitution(graph.slotAt(l), x, y, 1L, 0);
+			SumConstraint c = graph.constraintAt(l);
 			if(c.maxSum < 0){
 				System.out.println("mis-shrunk: " + c);
 				System.out.println("oops0.0");
 			}
 		}
-		sToC.removeAll(s);
+		graph.removeAll(k);
 		return q;
 	}
 	
 	private void Flagged(Map m, int x, int y){
 		// remove square
-		Square s = myMap.get(x).get(y);
-		Collection<SumConstraint> constraintsToUpdate = sToC.get(s);
-		for(SumConstraint c : constraintsToUpdate){
-			Set<Square> l = new HashSet<Square>();
-			l.add(s);
+		int k = graph.square(x, y);
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
 			// substitute a single square for a bomb
-			trySubstitution(c, l, 1);
+			trySubstitution(graph.slotAt(l), x, y, 1L, 1);
+			SumConstraint c = graph.constraintAt(l);
 			if(c.maxSum < 0){
 				System.out.println("mis-shrunk: " + c);
 				System.out.println("oops0.1");
@@ -339,27 +361,37 @@ public final class SmartGuessStrategy implements Strategy {
 		}
 		marked++;
 		bombDensityIsDirty = true;
-		sToC.removeAll(s);
+		graph.removeAll(k);
 	}
 	
-	public void simplifyConstraints(SumConstraint new_c){
+	public void simplifyConstraints(int new_slot){
+		SumConstraint new_c = graph.constraint(new_slot);
 		// lazy removal
-		if(new_c.vars.isEmpty()){
-			removeConstraint(new_c);
+		if(new_c.isEmpty()){
+			removeConstraint(new_slot);
 			return;
 		}
 		if(debug){
 			System.out.println("Simplifying: " + new_c);
 		}
-		for(SumConstraint c : constraints){
+		// only a constraint with all the squares of new_c can be
+		// simplified, and it is on the graph's list for each of them,
+		// so look at the list for one; lists are in order of slot
+		int k = graph.square(new_c.varX(new_c.vars), new_c.varY(new_c.vars));
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
+			int slot = graph.slotAt(l);
 			// substitute
-			if(new_c.equals(c)){
+			if(graph.isDeleted(slot)){
+				continue;
+			}
+			else if(slot == new_slot){
 				if(debug){
 					System.out.println("its me!");
 				}
 			}
 			else{
-				trySubstitution(c, new_c.vars, new_c.maxSum);
+				trySubstitution(slot, new_c.x, new_c.y, new_c.vars, new_c.maxSum);
+				SumConstraint c = graph.constraint(slot);
 				if(c.maxSum < 0){
 					System.out.println("mis-shrunk: " + c);
 					System.out.println("oops0.2");
@@ -369,34 +401,28 @@ public final class SmartGuessStrategy implements Strategy {
 	}
 	
 	/*
+	 * ss is a mask of squares for a SumConstraint with its corner at (x, y)
 	 * returns true if the constraint is now empty
 	 */
-	private boolean trySubstitution(SumConstraint c, Set<Square> ss, int numMines){
+	private boolean trySubstitution(int slot, int x, int y, long ss, int numMines){
+		SumConstraint c = graph.constraint(slot);
 		//if(!ss.equals(c.vars)){
 		boolean success = false;
-		if(c.vars.containsAll(ss)){
+		if(c.containsAll(x, y, ss)){
 			success = true;
 			if(debug){
-				System.out.println("Shrinking: " + c + " by " + ss + ", subtracting " + numMines);
-			}
-			for(Square s : ss){
-				c.vars.remove(s);
-				//sToC.remove(s, c);
+				System.out.println("Shrinking: " + c + " by " + new SumConstraint(x, y, ss, 0)
+					+ ", subtracting " + numMines);
 			}
+			c.removeAll(x, y, ss);
 			c.maxSum = c.maxSum-numMines;
 			c.minSum = c.minSum-numMines;
 			if(c.maxSum < 0){
 				System.out.println("mis-shrunk: " + c);
 			}
 			else{
-				if(updatedConstraintSet.add(c)){
-					updatedConstraints.add(c);
-				}
-				for(Square s : c.vars){
-					if(updatedSquareSet.add(s)){
-						updatedSquares.add(s);
-					}
-				}
+				updatedConstraints.add(slot);
+				updateSquares(c);
 			}
 		}
 		return success;
@@ -429,17 +455,18 @@ public final class SmartGuessStrategy implements Strategy {
 	// get rough probability without enumerating over all possible board states
 	private double getBombProbability(Map m, Square s){
 		double mp = getMapBombDensity(m);
-		Collection<SumConstraint> cs = sToC.get(s);
+		int k = graph.square(s.getX(), s.getY());
 		double cp = 0.0;
-		for (SumConstraint c : cs){
+		for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
+			SumConstraint c = graph.constraintAt(l);
 			int b = c.maxSum;
-			int n = c.vars.size();
+			int n = c.size();
 			double density = (double)b/(double)n;
 			if(density > cp){
 				cp = density;
 			}
 		}
-		if(!cs.isEmpty()){
+		if(!graph.isEmpty(k)){
 			if(cp == 0.0){
 				System.out.println("whoops");
 			}
@@ -450,60 +477,6 @@ public final class SmartGuessStrategy implements Strategy {
 		}
 	}
 	
-	// return success (i.e. did you blow up)
-		private boolean fastGuess(Map m){
-			double safestP = 9999.0;
-			Square safestS = null;
-			for(int i = 0; i < m.columns(); i++){
-				for(int j = 0; j < m.rows(); j++){
-					Square s = myMap.get(i).get(j);
-					if(m.look(i, j) == Map.UNPROBED){
-						double ps = getBombProbability(m, s);
-						if(ps > 1.0){
-							System.out.println("whoops");
-						}
-						if(ps < safestP){
-							safestP = ps;
-							safestS = s;
-						}
-						// use centrality as tie-breaker
-						else if(ps == safestP){
-							if(distToCenter(m,i,j) > distToCenter(m, safestS.getX(), safestS.getY())){
-								safestS = s;
-							}
-						}
-					}
-				}
-			}
-			if(safestS == null){
-				System.out.println("No legal guess!");
-				return false;
-			}
-			else{
-				Collection<SumConstraint> cs = sToC.get(safestS);
-				if(debug){
-					printSToC();
-					System.out.println("Guessing at " + safestS.getX() + "," + safestS.getY()
-						+ " with p=" + safestP);
-					System.out.println("Guessed Square has constraints:\n" + cs);
-				}
-				
-				int q = Probe(m, safestS.getX(), safestS.getY());
-			    if (Map.BOOM == q){
-			    	return false;
-			    }
-			    else if(q >= 0){
-			    	return true;
-			    }
-			    else{
-			    	if(debug){
-			    		System.out.println("illegal return from Probe!");
-			    	}
-			    	return false;
-			    }
-			}
-		}
-	
 	// centrality = manhattan distance to center
 	private double distToCenter(Map m, int x, int y){
 		int minX = 0;
@@ -520,172 +493,372 @@ public final class SmartGuessStrategy implements Strategy {
 		return d;
 	}
 	
-	// recursion invariant: Squares to the left of "index" have been resolved
-	private int countStates(Map m, int index, int remainingBombs, List<Square> toResolve, int[] bombStateCounts, int[] emptyStateCounts){
-		if(toResolve.size() == 0){
-			return 0;
+	// recursion invariant: Squares to the left of "index" have been resolved,
+	// "bombs" of them as bombs. Each complete assignment is counted in
+	// states, and in bombStates for each of its bombs, by its number of bombs.
+	// Each call takes one from work, and the counts are incomplete if it
+	// goes negative.
+	private void countStates(Map m, int index, int bombs, int remainingBombs, List<Square> toResolve, boolean[] isBomb, long[] states, long[][] bombStates){
+		if(--work < 0){
+			return;
 		}
-		Square s = toResolve.get(index);
-		boolean bombAllowed = (getContradictions(m,s,true).size() == 0) && remainingBombs > 0;
-		boolean emptyAllowed = getContradictions(m,s,false).size() == 0;
-		int bombStates = 0;
-		int emptyStates = 0;
-		if(toResolve.size() > index+1){
-			if(bombAllowed){
-				s.setFlagged(true);
-				bombStates = countStates(m, index+1, remainingBombs-1, toResolve, bombStateCounts, emptyStateCounts);
-				s.setFlagged(false);
+		if(index == toResolve.size()){
+			states[bombs]++;
+			for(int i = 0; i < index; i++){
+				if(isBomb[i]){
+					bombStates[i][bombs]++;
+				}
 			}
-			if(emptyAllowed){
-				s.setSafeFlagged(true);
-				emptyStates = countStates(m, index+1, remainingBombs, toResolve, bombStateCounts, emptyStateCounts);
-				s.setSafeFlagged(false);
+			return;
+		}
+		Square s = toResolve.get(index);
+		if(!hasContradiction(m,s,true) && remainingBombs > 0){
+			isBomb[index] = true;
+			assume(s, true);
+			countStates(m, index+1, bombs+1, remainingBombs-1, toResolve, isBomb, states, bombStates);
+			release(s);
+		}
+		if(!hasContradiction(m,s,false)){
+			isBomb[index] = false;
+			assume(s, false);
+			countStates(m, index+1, bombs, remainingBombs, toResolve, isBomb, states, bombStates);
+			release(s);
+		}
+	}
+	
+	// split the frontier into components, squares being in the same one
+	// when a chain of constraints links them, and label each square with
+	// its component; components and their squares keep the frontier's order
+	private List<List<Square>> getComponents(List<Square> frontier, int[] component){
+		for(int i = 0; i < frontier.size(); i++){
+			Square s = frontier.get(i);
+			frontierIndex[graph.square(s.getX(), s.getY())] = i;
+			component[i] = -1;
+		}
+		List<List<Square>> components = new ArrayList<List<Square>>();
+		int[] queue = new int[frontier.size()];
+		for(int i = 0; i < frontier.size(); i++){
+			if(component[i] >= 0){
+				continue;
+			}
+			int n = components.size();
+			int head = 0;
+			int tail = 0;
+			component[i] = n;
+			queue[tail++] = i;
+			while(head < tail){
+				Square s = frontier.get(queue[head++]);
+				int k = graph.square(s.getX(), s.getY());
+				for(int l = graph.firstLink(k); l >= 0; l = graph.nextLink(l)){
+					SumConstraint c = graph.constraintAt(l);
+					// the square may have been substituted out of c
+					if((c.bit(s.getX(), s.getY()) & c.vars) == 0){
+						continue;
+					}
+					for(long b = c.vars; b != 0; b &= b - 1){
+						int j = frontierIndex[graph.square(c.varX(b), c.varY(b))];
+						if(j >= 0 && component[j] < 0){
+							component[j] = n;
+							queue[tail++] = j;
+						}
+					}
+				}
 			}
+			components.add(new ArrayList<Square>());
 		}
-		else{
-			if(bombAllowed){
-				bombStates = 1;
+		for(int i = 0; i < frontier.size(); i++){
+			Square s = frontier.get(i);
+			frontierIndex[graph.square(s.getX(), s.getY())] = -1;
+			components.get(component[i]).add(s);
+		}
+		return components;
+	}
+	
+	// the product of a and b as polynomials: the ways to assign two
+	// parts of the frontier together, by number of bombs
+	private BigInteger[] convolve(BigInteger[] a, long[] b){
+		BigInteger[] product = new BigInteger[a.length + b.length - 1];
+		Arrays.fill(product, BigInteger.ZERO);
+		for(int i = 0; i < a.length; i++){
+			for(int j = 0; j < b.length; j++){
+				if(b[j] != 0){
+					product[i + j] = product[i + j].add(a[i].multiply(BigInteger.valueOf(b[j])));
+				}
 			}
-			if(emptyAllowed){
-				emptyStates = 1;
+		}
+		return product;
+	}
+	
+	// the ways to assign a with bombs already placed, given the ways b
+	// to assign the rest of the board: product[s] is the sum of a[i]
+	// times b[s + i], for s bombs already placed
+	private BigInteger[] fold(long[] a, BigInteger[] b){
+		BigInteger[] product = new BigInteger[b.length - a.length + 1];
+		for(int s = 0; s < product.length; s++){
+			product[s] = BigInteger.ZERO;
+			for(int i = 0; i < a.length; i++){
+				if(a[i] != 0){
+					product[s] = product[s].add(b[s + i].multiply(BigInteger.valueOf(a[i])));
+				}
 			}
 		}
-		// persist state counts for this square
-		bombStateCounts[index] += bombStates;
-		emptyStateCounts[index] += emptyStates;
-		return bombStates + emptyStates;
+		return product;
+	}
+	
+	/*
+	 * For k bombs on the frontier, the ways to place the other r - k
+	 * bombs on the n squares off it, C(n, r - k), for k from 0 to f.
+	 * Only the ratios matter, so each is divided by C(n, i0), where
+	 * i0 is the fewest bombs that can be off the frontier, and
+	 * multiplied by (i0 + 1)(i0 + 2)...(i1), where i1 is the most;
+	 * this keeps the numbers integers of a few bits per frontier square.
+	 */
+	private BigInteger[] offFrontierWays(int n, int r, int f){
+		BigInteger[] ways = new BigInteger[f + 1];
+		Arrays.fill(ways, BigInteger.ZERO);
+		int i0 = Math.max(0, r - f);
+		int i1 = Math.min(r, n);
+		if(i0 > i1){
+			return ways;
+		}
+		// falling[i - i0] = (n - i0)(n - i0 - 1)...(n - i + 1)
+		BigInteger[] falling = new BigInteger[i1 - i0 + 1];
+		falling[0] = BigInteger.ONE;
+		for(int i = i0 + 1; i <= i1; i++){
+			falling[i - i0] = falling[i - i0 - 1].multiply(BigInteger.valueOf(n - i + 1));
+		}
+		// rising = (i + 1)(i + 2)...(i1)
+		BigInteger rising = BigInteger.ONE;
+		for(int i = i1; i >= i0; i--){
+			ways[r - i] = falling[i - i0].multiply(rising);
+			rising = rising.multiply(BigInteger.valueOf(i));
+		}
+		return ways;
+	}
+	
+	// a/b as a double, for a no more than b, and NaN if b is 0; both
+	// are cut to 62 bits, so fractions with the same b are equal when
+	// their a are, and compare as their a do
+	private double ratio(BigInteger a, BigInteger b){
+		if(b.signum() == 0){
+			return Double.NaN;
+		}
+		int shift = Math.max(0, b.bitLength() - 62);
+		return (double)a.shiftRight(shift).longValue() / b.shiftRight(shift).longValue();
 	}
 	
 	// return success (i.e. did you blow up)
 	private boolean probeSafestSquare(Map m){
 		// make sure frontier only contains unique Squares
-		Set<Square> frontierSet = new HashSet<Square>(sToC.keySet());
-		
-		if(frontierSet.size() > maxFrontier){
-			return fastGuess(m);
+		List<Square> frontierSquares = new ArrayList<Square>();
+		for(int k = graph.firstSquare(); k >= 0; k = graph.nextSquare(k)){
+			frontierSquares.add(square(k));
 		}
-		else{
-			Set<Square> nonFrontierSet = new HashSet<Square>();
-			for(int i = 0; i < m.columns(); i++){
-				for(int j = 0; j < m.rows(); j++){
-					Square s = myMap.get(i).get(j);
-					if(!frontierSet.contains(s)){
-						if(m.look(s.getX(), s.getY()) == Map.UNPROBED){
-							nonFrontierSet.add(s);
-						}
-					}
-				}
-			}
-			List<Square> frontier = new ArrayList<Square>(frontierSet);
-			List<Square> nonFrontier = new ArrayList<Square>(nonFrontierSet);
-			int remainingBombs = m.mines_minus_marks();
-			
-			int[] bombStateCounts = new int[frontier.size()];
-			int[] emptyStateCounts = new int[frontier.size()];
-			
-			countStates(m, 0, remainingBombs, frontier, bombStateCounts, emptyStateCounts);
-			
-			long totalBombStates = 0;
-			long totalEmptyStates = 0;
-			for(int i = 0; i < frontier.size(); i++){
-				totalBombStates += bombStateCounts[i];
-				totalEmptyStates += emptyStateCounts[i];
+		Set<Square> frontierSet = new HashSet<Square>(frontierSquares);
+		List<Square> frontier = new ArrayList<Square>(frontierSet);
+		
+		// components share no constraint, so each is counted on its own
+		int[] component = new int[frontier.size()];
+		final List<List<Square>> components = getComponents(frontier, component);
+		// components are counted smallest first while the work budget
+		// lasts. Components larger than maxComponent, and those the
+		// budget does not reach, are not counted: their squares are
+		// estimated from their constraints alone, and in the count of
+		// the rest of the board they join the squares off the frontier
+		int remainingBombs = m.mines_minus_marks();
+		long[][] componentStates = new long[components.size()][];
+		long[][][] componentBombStates = new long[components.size()][][];
+		List<Integer> bySize = new ArrayList<Integer>();
+		for(int c = 0; c < components.size(); c++){
+			bySize.add(c);
+		}
+		Collections.sort(bySize, new Comparator<Integer>(){
+			public int compare(Integer a, Integer b){
+				return components.get(a).size() - components.get(b).size();
+			}
+		});
+		work = maxWork;
+		for(int c : bySize){
+			List<Square> squares = components.get(c);
+			if(squares.size() > maxComponent || work < 0){
+				break;
+			}
+			long[] counts = new long[squares.size() + 1];
+			long[][] bombCounts = new long[squares.size()][squares.size() + 1];
+			countStates(m, 0, 0, remainingBombs, squares, new boolean[squares.size()], counts, bombCounts);
+			if(work >= 0){
+				componentStates[c] = counts;
+				componentBombStates[c] = bombCounts;
 			}
-			double frontierDensity = (double)totalBombStates/(totalEmptyStates+totalBombStates);
-			double expectedFrontierBombs;
-			if(frontier.size() == 0){
-				expectedFrontierBombs = 0;
+		}
+		
+		int[] counted = new int[components.size()];
+		int enumerated = 0;
+		int estimated = 0;
+		for(int c = 0; c < components.size(); c++){
+			if(componentStates[c] == null){
+				counted[c] = -1;
+				estimated += components.get(c).size();
 			}
 			else{
-				expectedFrontierBombs = frontierDensity*frontier.size();
+				counted[c] = enumerated++;
 			}
-			double expectedNonFrontierBombs = m.mines_minus_marks() - expectedFrontierBombs;
-			double nonFrontierDensity = expectedNonFrontierBombs/nonFrontier.size();
-			
-			// find nonFrontier Square which is furthest from center
-			Square bestNonFrontierS = null;
-			double bestNonFrontierD = 0.0;
-			for(int i = 0; i < nonFrontier.size(); i++){
-				Square s = nonFrontier.get(i);
-				double d = distToCenter(m, s.getX(), s.getY());
-				if(d > bestNonFrontierD){
-					bestNonFrontierD = d;
-					bestNonFrontierS = s;
-				}
+		}
+		long[][] states = new long[enumerated][];
+		long[][][] bombStates = new long[enumerated][][];
+		for(int c = 0; c < components.size(); c++){
+			if(counted[c] >= 0){
+				states[counted[c]] = componentStates[c];
+				bombStates[counted[c]] = componentBombStates[c];
 			}
-			
-			double[] probs = new double[frontier.size()];
-			for(int i = 0; i < frontier.size(); i++){
-				probs[i] = (double)bombStateCounts[i]/(double)(emptyStateCounts[i]+bombStateCounts[i]);
+		}
+		
+		Set<Square> nonFrontierSet = new HashSet<Square>();
+		for(int k = unknown.first(); k >= 0; k = unknown.next(k)){
+			Square s = myMap.get(unknown.x(k)).get(unknown.y(k));
+			if(!frontierSet.contains(s)){
+				nonFrontierSet.add(s);
 			}
-			
-			double bestFrontierP = 9999.0;
-			Square bestFrontierS = null;
-			for(int i = 0; i < frontier.size(); i++){
-				Square s = frontier.get(i);
-				double ps = probs[i];
-				if(ps > 1.0){
-					System.out.println("whoops");
-				}
-				if(ps < bestFrontierP){
-					bestFrontierP = ps;
-					bestFrontierS = s;
-				}
-				// use centrality as tie-breaker
-				else if(ps == bestFrontierP){
-					if(distToCenter(m,s.getX(),s.getY()) > distToCenter(m, bestFrontierS.getX(), bestFrontierS.getY())){
-						bestFrontierS = s;
-					}
+		}
+		List<Square> nonFrontier = new ArrayList<Square>(nonFrontierSet);
+		// squares whose assignments are not enumerated
+		int uncounted = nonFrontier.size() + estimated;
+		
+		// count assignments of the whole board: each assignment of the
+		// counted components with k bombs is one for each way of placing
+		// the remaining bombs on the uncounted squares
+		BigInteger[] ways = offFrontierWays(uncounted, remainingBombs, frontier.size() - estimated);
+		// before[e]: the ways to assign the counted components before e,
+		// by number of bombs
+		BigInteger[][] before = new BigInteger[enumerated + 1][];
+		before[0] = new BigInteger[]{BigInteger.ONE};
+		for(int e = 0; e < enumerated; e++){
+			before[e + 1] = convolve(before[e], states[e]);
+		}
+		BigInteger[] all = before[enumerated];
+		BigInteger totalStates = BigInteger.ZERO;
+		BigInteger nonFrontierBombs = BigInteger.ZERO;
+		for(int k = 0; k < all.length; k++){
+			BigInteger w = all[k].multiply(ways[k]);
+			totalStates = totalStates.add(w);
+			nonFrontierBombs = nonFrontierBombs.add(w.multiply(BigInteger.valueOf(remainingBombs - k)));
+		}
+		double nonFrontierDensity = ratio(nonFrontierBombs,
+			totalStates.multiply(BigInteger.valueOf(uncounted)));
+		
+		// an assignment of a component with j bombs is one for each
+		// way of assigning the rest of the board, room[j]; after
+		// holds the ways to assign the components after e and the
+		// uncounted squares, by bombs already placed, so
+		// room[j] sums before[e][t] times after[j + t]
+		BigInteger[][] room = new BigInteger[enumerated][];
+		BigInteger[] after = ways;
+		for(int e = enumerated - 1; e >= 0; e--){
+			room[e] = new BigInteger[states[e].length];
+			for(int j = 0; j < room[e].length; j++){
+				room[e][j] = BigInteger.ZERO;
+				for(int t = 0; t < before[e].length; t++){
+					room[e][j] = room[e][j].add(before[e][t].multiply(after[j + t]));
 				}
 			}
-			
-			Square bestS = null;
-			double bestP = 9999.0;
-			if(frontier.size() == 0){
-				bestS = bestNonFrontierS;
-				bestP = nonFrontierDensity;
-			}
-			else if(nonFrontier.size() == 0){
-				bestS = bestFrontierS;
-				bestP = bestFrontierP;
+			after = fold(states[e], after);
+		}
+		
+		// find nonFrontier Square which is furthest from center
+		Square bestNonFrontierS = null;
+		double bestNonFrontierD = 0.0;
+		for(int i = 0; i < nonFrontier.size(); i++){
+			Square s = nonFrontier.get(i);
+			double d = distToCenter(m, s.getX(), s.getY());
+			if(d > bestNonFrontierD){
+				bestNonFrontierD = d;
+				bestNonFrontierS = s;
 			}
-			else if(bestFrontierP <= nonFrontierDensity){
-				bestS = bestFrontierS;
-				bestP = bestFrontierP;
+		}
+		
+		double[] probs = new double[frontier.size()];
+		int[] position = new int[components.size()];
+		for(int i = 0; i < frontier.size(); i++){
+			int c = component[i];
+			int e = counted[c];
+			if(e < 0){
+				probs[i] = getBombProbability(m, frontier.get(i));
+				continue;
+			}
+			long[] counts = bombStates[e][position[c]++];
+			BigInteger bombStateCount = BigInteger.ZERO;
+			for(int j = 0; j < counts.length; j++){
+				bombStateCount = bombStateCount.add(room[e][j].multiply(BigInteger.valueOf(counts[j])));
+			}
+			probs[i] = ratio(bombStateCount, totalStates);
+		}
+		
+		double bestFrontierP = 9999.0;
+		Square bestFrontierS = null;
+		for(int i = 0; i < frontier.size(); i++){
+			Square s = frontier.get(i);
+			double ps = probs[i];
+			if(ps > 1.0){
+				System.out.println("whoops");
 			}
-			else{
-				bestS = bestNonFrontierS;
-				bestP = nonFrontierDensity;
+			if(ps < bestFrontierP){
+				bestFrontierP = ps;
+				bestFrontierS = s;
 			}
-			
-			if(bestS == null){
-				System.out.println("No legal guess!");
-				return false;
-			}
-			else{
-				Collection<SumConstraint> cs = sToC.get(bestS);
-				if(debug){
-					printSToC();
-					System.out.println("Guessing at " + bestS.getX() + "," + bestS.getY()
-						+ " with p=" + bestP);
-					System.out.println("Guessed Square has constraints:\n" + cs);
+			// use centrality as tie-breaker
+			else if(ps == bestFrontierP){
+				if(distToCenter(m,s.getX(),s.getY()) > distToCenter(m, bestFrontierS.getX(), bestFrontierS.getY())){
+					bestFrontierS = s;
 				}
-				
-				int q = Probe(m, bestS.getX(), bestS.getY());
-			    if (Map.BOOM == q){
-			    	return false;
-			    }
-			    else if(q >= 0){
-			    	return true;
-			    }
-			    else{
-			    	if(debug){
-			    		System.out.println("illegal return from Probe!");
-			    	}
-			    	return false;
-			    }
 			}
 		}
+		
+		Square bestS = null;
+		double bestP = 9999.0;
+		if(frontier.size() == 0){
+			bestS = bestNonFrontierS;
+			bestP = nonFrontierDensity;
+		}
+		else if(nonFrontier.size() == 0){
+			bestS = bestFrontierS;
+			bestP = bestFrontierP;
+		}
+		else if(bestFrontierP <= nonFrontierDensity){
+			bestS = bestFrontierS;
+			bestP = bestFrontierP;
+		}
+		else{
+			bestS = bestNonFrontierS;
+			bestP = nonFrontierDensity;
+		}
+		
+		if(bestS == null){
+			System.out.println("No legal guess!");
+			return false;
+		}
+		else{
+			if(debug){
+				printSToC();
+				System.out.println("Guessing at " + bestS.getX() + "," + bestS.getY()
+					+ " with p=" + bestP);
+				System.out.println("Guessed Square has constraints:");
+				printConstraints(graph.square(bestS.getX(), bestS.getY()));
+			}
+			
+			int q = Probe(m, bestS.getX(), bestS.getY());
+		    if (Map.BOOM == q){
+		    	return false;
+		    }
+		    else if(q >= 0){
+		    	return true;
+		    }
+		    else{
+		    	if(debug){
+		    		System.out.println("illegal return from Probe!");
+		    	}
+		    	return false;
+		    }
+		}
 	}
 	
 	// return success (i.e. did you blow up)
@@ -1,44 +1,160 @@
 package brian;
 
-import java.util.HashSet;
-import java.util.Set;
-
 
+/**
+ * A constraint on the number of bombs among some squares.
+ * 
+ * A constraint is made from the unknown neighbors of a probed square,
+ * and afterwards only loses squares, so its squares always lie in a
+ * small window. They are kept as the corner (x, y) of the window and
+ * a bit mask in which bit WIDTH*j + i is the square (x+i, y+j).
+ * Subset tests and differences are then a few operations on longs.
+ * 
+ * Squares temporarily assumed to be bombs or safe are kept as two
+ * more masks, and counted as they are assumed and released, so
+ * checking for a violation compares a few ints.
+ */
 public class SumConstraint {
-	public Set<Square> vars = new HashSet<Square>();
+	public static final int WIDTH = 8;
+	
+	public final int x;
+	public final int y;
+	public long vars;
 	public int minSum;
 	public int maxSum;
+	// vars assumed to be bombs, and assumed to be safe, and how many
+	// of each; vars must not change while any are assumed
+	private long flagged;
+	private long safeFlagged;
+	private int bombs;
+	private int safes;
 	
-	public SumConstraint(Set<Square> vars, int sum) {
-	    this.vars = vars;
-	    this.minSum = sum;
-	    this.maxSum = sum;
+	public SumConstraint(int x, int y, long vars, int sum) {
+	    this(x, y, vars, sum, sum);
 	}
 	
-	public SumConstraint(Set<Square> vars, int minSum, int maxSum) {
+	public SumConstraint(int x, int y, long vars, int minSum, int maxSum) {
+	    this.x = x;
+	    this.y = y;
 	    this.vars = vars;
 	    this.minSum = minSum;
 	    this.maxSum = maxSum;
 	}
 	
-	public boolean isViolated(){
-		int minSum = 0;
-		int maxSum = 0;
-		for (Square var : vars){
-			if(var.isFlagged()){
-				minSum++;
-				maxSum++;
-			}
-			else if(var.isSafeFlagged()){
-				// neither sum increases
-			}
-			else{
-				maxSum++;
-			}
+	// the neighbors given by Map.neighborhood, one bit per neighbor,
+	// as a mask for a window with its corner at (x-1, y-1)
+	public static long neighbors(int n){
+		return (n & 07) | (long)(n & 070) << 5 | (long)(n & 0700) << 10;
+	}
+	
+	// the bit of square (x, y), or 0 if it is outside the window
+	public long bit(int x, int y){
+		int i = x - this.x;
+		int j = y - this.y;
+		if(i < 0 || i >= WIDTH || j < 0 || j >= WIDTH)
+			return 0;
+		return 1L << (WIDTH*j + i);
+	}
+	
+	// the coordinates of the lowest square in a mask
+	public int varX(long mask){
+		return x + Long.numberOfTrailingZeros(mask) % WIDTH;
+	}
+	
+	public int varY(long mask){
+		return y + Long.numberOfTrailingZeros(mask) / WIDTH;
+	}
+	
+	public int size(){
+		return Long.bitCount(vars);
+	}
+	
+	public boolean isEmpty(){
+		return vars == 0;
+	}
+	
+	// the squares of a mask for a window at (x, y), moved to this window;
+	// squares outside this window are lost
+	private long moved(int x, int y, long mask){
+		int dx = x - this.x;
+		int dy = y - this.y;
+		if(dx <= -WIDTH || dx >= WIDTH || dy <= -WIDTH || dy >= WIDTH)
+			return 0;
+		long cols = 0x0101010101010101L;
+		if(dx > 0)
+			mask = (mask & cols * ((1L << (WIDTH - dx)) - 1)) << dx;
+		else if(dx < 0)
+			mask = (mask & ~(cols * ((1L << -dx) - 1))) >>> -dx;
+		if(dy > 0)
+			mask <<= WIDTH*dy;
+		else if(dy < 0)
+			mask >>>= WIDTH*-dy;
+		return mask;
+	}
+	
+	// are all the squares of a mask for a window at (x, y) in vars?
+	public boolean containsAll(int x, int y, long mask){
+		long m = moved(x, y, mask);
+		return (m & ~vars) == 0 && Long.bitCount(m) == Long.bitCount(mask);
+	}
+	
+	public void removeAll(int x, int y, long mask){
+		vars &= ~moved(x, y, mask);
+	}
+	
+	// assume square (x, y) is a bomb, or is safe, until released
+	public void assume(int x, int y, boolean isBomb){
+		release(x, y);
+		long b = bit(x, y) & vars;
+		if(b == 0)
+			return;
+		if(isBomb){
+			flagged |= b;
+			bombs++;
 		}
-		if(this.minSum == 0){
-			//System.out.println("foo");
+		else{
+			safeFlagged |= b;
+			safes++;
 		}
+	}
+	
+	public void release(int x, int y){
+		long b = bit(x, y);
+		if((flagged & b) != 0){
+			flagged &= ~b;
+			bombs--;
+		}
+		else if((safeFlagged & b) != 0){
+			safeFlagged &= ~b;
+			safes--;
+		}
+	}
+	
+	public boolean isViolated(){
+		return isViolated(bombs, size() - safes);
+	}
+	
+	// is the constraint violated if square (x, y) is also assumed
+	// to be a bomb, or to be safe?
+	public boolean isViolated(int x, int y, boolean isBomb){
+		long b = bit(x, y) & vars;
+		if(b == 0)
+			return isViolated();
+		// the counts without any assumption already made for (x, y)
+		int bombs = this.bombs;
+		int safes = this.safes;
+		if((flagged & b) != 0)
+			bombs--;
+		else if((safeFlagged & b) != 0)
+			safes--;
+		if(isBomb)
+			return isViolated(bombs + 1, size() - safes);
+		else
+			return isViolated(bombs, size() - safes - 1);
+	}
+	
+	// bombs for sure, and bombs at most
+	private boolean isViolated(int minSum, int maxSum){
 		if(this.minSum < minSum)
 			return true;
 		else if(maxSum < this.maxSum)
@@ -49,7 +165,14 @@ public class SumConstraint {
 
 	@Override
 	public String toString() {
-		return "C: [vars=" + vars + ", minSum=" + minSum
+		StringBuilder sb = new StringBuilder("[");
+		for(long b = vars; b != 0; b &= b - 1){
+			sb.append("[" + varX(b) + ", " + varY(b) + "]");
+			if((b & (b - 1)) != 0)
+				sb.append(", ");
+		}
+		sb.append("]");
+		return "C: [vars=" + sb + ", minSum=" + minSum
 				+ ", maxSum=" + maxSum + "]";
 	}
 }
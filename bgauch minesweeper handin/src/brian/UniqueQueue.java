@@ -0,0 +1,86 @@
+package brian;
+
+/* Copyright (C) 1995 John D. Ramsdell
+
+This file is part of Programmer's Minesweeper (PGMS).
+
+PGMS is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2, or (at your option)
+any later version.
+
+PGMS is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PGMS; see the file COPYING.  If not, write to
+the Free Software Foundation, 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+*/
+
+import java.util.Arrays;
+
+/**
+ * A first in, first out queue of small nonnegative ints, in which an
+ * int is queued at most once.
+ *
+ * An int polled from the queue is still a member until it is removed,
+ * so it cannot be queued again while it is being handled.
+ * The queue is a ring buffer and members are flags, so no objects
+ * are made once both are large enough.
+ */
+public final class UniqueQueue {
+	private int[] items = new int[16];
+	private int head;
+	private int size;
+	private boolean[] members = new boolean[16];
+
+	// returns false if the int is already a member
+	public boolean add(int i){
+		if(i >= members.length){
+			members = Arrays.copyOf(members, Math.max(i + 1, 2 * members.length));
+		}
+		if(members[i]){
+			return false;
+		}
+		members[i] = true;
+		if(size == items.length){
+			int[] a = new int[2 * size];
+			for(int k = 0; k < size; k++){
+				a[k] = get(k);
+			}
+			items = a;
+			head = 0;
+		}
+		items[(head + size) % items.length] = i;
+		size++;
+		return true;
+	}
+
+	// take the int at the head of the queue, leaving it a member
+	public int poll(){
+		int i = items[head];
+		head = (head + 1) % items.length;
+		size--;
+		return i;
+	}
+
+	public void remove(int i){
+		members[i] = false;
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	// the k-th int from the head
+	public int get(int k){
+		return items[(head + k) % items.length];
+	}
+}
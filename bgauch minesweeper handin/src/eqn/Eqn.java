@@ -22,20 +22,45 @@ Boston, MA 02111-1307, USA.
 
 import set.*;
 import sp.Point;
+import sp.PointSet;
 
 /**
  * The class Eqn implements immutable equations.
  * The equations are linear.  A point is used as a variable.
  * The coefficent of each variable in an equation is one.
- * These equations can be used as elements of sets.
+ * These equations can be used as elements of sets, and as keys
+ * of hash tables; the hash code is computed once, when the
+ * equation is made. <p>
+ * An equation is made at a point from the points near it, or by
+ * taking one such equation from another, so its points nearly always
+ * lie in a window of eight by eight points.  Such an equation is kept
+ * as the corner of the window and a word with one bit per point in the
+ * window, so the subset test and differences are a few operations on
+ * words.  The corner is the smallest x and the smallest y of the points,
+ * which makes the form unique.  Equations whose points do not fit in a
+ * window, such as the global equation, keep a point set instead. <p>
+ * Every equation also has a signature, a word in which bit k % 64 is
+ * set for the cell number k of each of its points.  The points of an
+ * equation cannot be a subset of the points of another unless its
+ * signature is, so most pairs of equations are told apart without
+ * looking at their points.
  * @see set.Set
  * @see sp.Point
+ * @see sp.PointSet
  * @version October 1995
  * @author John D. Ramsdell
  */
 final class Eqn implements Element {
+  private static final int width = 8; // Width and height of a window
+
   private int c;		// Constant term.
-  private Set ps;		// Set of points.
+  private int columns;		// Columns in the board.
+  private int x;		// Corner of the window.
+  private int y;
+  private long w;		// Bit width * j + i is point (x + i, y + j).
+  private PointSet ps;		// Set of points, when not in a window.
+  private long sig;		// Signature of the points.
+  private int hash;		// Hash code.
 
   private Eqn() {}
 
@@ -49,9 +74,103 @@ final class Eqn implements Element {
    * @param points          set of points
    * @return                an equation
    */
-  Eqn(int constant, Set points) {
+  Eqn(int constant, PointSet points) {
+    int x0 = Integer.MAX_VALUE;
+    int y0 = Integer.MAX_VALUE;
+    int x1 = -1;
+    int y1 = -1;
+    for (PointSet s = points; !s.empty(); s = s.but_first()) {
+      Point p = s.first();
+      x0 = Math.min(x0, p.x());
+      y0 = Math.min(y0, p.y());
+      x1 = Math.max(x1, p.x());
+      y1 = Math.max(y1, p.y());
+    }
+    if (x1 - x0 < width && y1 - y0 < width) {
+      long w = 0;
+      for (PointSet s = points; !s.empty(); s = s.but_first()) {
+	Point p = s.first();
+	w |= 1L << (width * (p.y() - y0) + p.x() - x0);
+      }
+      window(constant, points.columns(), x0, y0, w);
+    }
+    else {
+      c = constant;
+      columns = points.columns();
+      ps = points;
+      for (PointSet s = points; !s.empty(); s = s.but_first()) {
+	Point p = s.first();
+	sig |= 1L << (p.y() * columns + p.x()); // Shifts are mod 64
+      }
+      hash = 31 * constant + points.hashCode();
+    }
+  }
+
+  /**
+   * Construct an equation from a constant and the points
+   * in a window.
+   * @param constant        constant term
+   * @param columns         columns in the board
+   * @param x               x coordinate of the corner of the window
+   * @param y               y coordinate of the corner of the window
+   * @param w               bit 8 * j + i is set when the point
+   *                        (x + i, y + j) is in the equation
+   * @return                an equation
+   */
+  Eqn(int constant, int columns, int x, int y, long w) {
+    window(constant, columns, x, y, w);
+  }
+
+  /* Move the corner of the window to the points, and hash. */
+  private void window(int constant, int columns, int x, int y, long w) {
+    if (w == 0)
+      x = y = 0;
+    else {
+      int j = Long.numberOfTrailingZeros(w) / width; // First row used
+      long f = w | w >>> 32;	// Fold the rows together
+      f |= f >>> 16;
+      f |= f >>> 8;
+      int i = Long.numberOfTrailingZeros(f); // First column used
+      w >>>= width * j + i;
+      x += i;
+      y += j;
+    }
     c = constant;
-    ps = points;
+    this.columns = columns;
+    this.x = x;
+    this.y = y;
+    this.w = w;
+    sig = 0;
+    for (int j = 0; j < width; j++) // Each row is a run of cell numbers
+      sig |= Long.rotateLeft(w >>> width * j & 0xff, (y + j) * columns + x);
+    hash = 31 * (31 * constant + y * columns + x) + mix(w);
+  }
+
+  private static int mix(long k) {
+    k = (k ^ (k >>> 33)) * 0xff51afd7ed558ccdL;
+    k = (k ^ (k >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return (int)(k ^ (k >>> 33));
+  }
+
+  /* The window w with its corner moved by dx and dy,
+   * less the points that leave the window. */
+  private static long shift(long w, int dx, int dy) {
+    if (dx <= -width || dx >= width || dy <= -width || dy >= width)
+      return 0;
+    if (dx > 0)
+      w = (w & columns_below(width - dx)) << dx;
+    else if (dx < 0)
+      w = (w & ~columns_below(-dx)) >>> -dx;
+    if (dy > 0)
+      w <<= width * dy;
+    else if (dy < 0)
+      w >>>= width * -dy;
+    return w;
+  }
+
+  /* The bits of the first k columns of a window. */
+  private static long columns_below(int k) {
+    return 0x0101010101010101L * ((1L << k) - 1);
   }
 
   /**
@@ -66,8 +185,94 @@ final class Eqn implements Element {
    * Access the set of points an equation.
    * @return 		the set of points
    */
-  Set points() {
-    return ps;
+  PointSet points() {
+    if (ps != null)
+      return ps;
+    else
+      return new PointSet(columns, cells(), Long.bitCount(w));
+  }
+
+  /**
+   * Access the cell numbers of the points of an equation.  The point
+   * (x, y) has cell number y * columns + x.
+   * @return 		the cell numbers, in increasing order
+   */
+  int[] cells() {
+    if (ps != null) {
+      int cells[] = new int[ps.card()];
+      int k = 0;
+      for (PointSet s = ps; !s.empty(); s = s.but_first()) {
+	Point p = s.first();
+	cells[k++] = p.y() * columns + p.x();
+      }
+      return cells;
+    }
+    int cells[] = new int[Long.bitCount(w)];
+    int k = 0;
+    for (long b = w; b != 0; b &= b - 1)
+      cells[k++] = cell(b);
+    return cells;
+  }
+
+  /* The cell number of the lowest point in window b. */
+  private int cell(long b) {
+    int i = Long.numberOfTrailingZeros(b);
+    return (y + i / width) * columns + x + i % width;
+  }
+
+  /**
+   * The number of points in an equation.
+   * @return 		the number of points
+   */
+  int card() {
+    return ps != null ? ps.card() : Long.bitCount(w);
+  }
+
+  /**
+   * Are the points of this equation a proper subset
+   * of the points of another?
+   * @param e		the other equation
+   * @return 		true if this equation has fewer points,
+   *			and all of them are in e
+   */
+  boolean proper_subset(Eqn e) {
+    if ((sig & ~e.sig) != 0)
+      return false;
+    else if (ps != null || e.ps != null)
+      return points().proper_subset(e.points());
+    int n = Long.bitCount(w);
+    return n < Long.bitCount(e.w)
+      && Long.bitCount(shift(w, x - e.x, y - e.y) & e.w) == n;
+  }
+
+  /**
+   * The number of points of this equation that are not points
+   * of another.  This is minus(e).card(), but makes no equation.
+   * @param e		the other equation
+   * @return 		the number of points
+   */
+  int card_minus(Eqn e) {
+    if ((sig & e.sig) == 0)	// No points in common
+      return card();
+    else if (ps != null || e.ps != null)
+      return points().set_difference(e.points()).card();
+    else
+      return Long.bitCount(w & ~shift(e.w, e.x - x, e.y - y));
+  }
+
+  /**
+   * Subtract another equation from this one, dropping
+   * the points of this equation that are in both.
+   * @param e		the other equation
+   * @return 		an equation with constant c - e.constant(),
+   *			and the points of this equation not in e
+   */
+  Eqn minus(Eqn e) {
+    if (ps != null || e.ps != null)
+      return new Eqn(c - e.c, points().set_difference(e.points()));
+    else
+      return new Eqn(c - e.c, columns, x, y,
+		     w & ~shift(e.w, e.x - x, e.y - y));
   }
 
   /**
@@ -75,24 +280,54 @@ final class Eqn implements Element {
    * @see Element#same
    */
   public boolean same(Element e) {
-    return e != null
-      && e instanceof Eqn
-	&& c == ((Eqn)e).c
-	  && ps.same(((Eqn)e).ps);
+    if (e == null || !(e instanceof Eqn))
+      return false;
+    Eqn e0 = (Eqn)e;
+    if (c != e0.c)
+      return false;
+    else if (ps == null)
+      return e0.ps == null && x == e0.x && y == e0.y && w == e0.w;
+    else
+      return e0.ps != null && ps.same(e0.ps);
+  }
+
+  /**
+   * Is this equation equal to some other object?
+   * @see #same
+   */
+  public boolean equals(Object o) {
+    return o instanceof Eqn && hash == ((Eqn)o).hash && same((Eqn)o);
+  }
+
+  /**
+   * A hash code for the equation.
+   */
+  public int hashCode() {
+    return hash;
   }
 
   /**
    * Is this element less than some other element?
+   * The points are ordered as point sets are.
    * @see Element#less
    */
   public boolean less(Element e) {
     if (e == null || !(e instanceof Eqn))
       return false;
-    else
-      return
-	c < ((Eqn)e).c
-	  || c == ((Eqn)e).c
-	    && ps.less(((Eqn)e).ps);
+    Eqn e0 = (Eqn)e;
+    if (c != e0.c)
+      return c < e0.c;
+    else if (ps != null || e0.ps != null)
+      return points().less(e0.points());
+    long a = w;
+    long b = e0.w;
+    for (; a != 0 && b != 0; a &= a - 1, b &= b - 1) {
+      int i = cell(a);		// The first point that differs
+      int j = e0.cell(b);	// decides
+      if (i != j)
+	return i < j;
+    }
+    return a == 0 && b != 0;	// A prefix comes first
   }
 
   /**
@@ -100,14 +335,15 @@ final class Eqn implements Element {
    * Used only for debugging.
    */
   void display() {
+    PointSet ps = points();
     System.out.print(c + " = ");
     if (ps.empty())
       System.out.print("0");
     else {
-      ((Point)ps.first()).display();
-      for (Set ps0 = ps.but_first(); !ps0.empty(); ps0 = ps0.but_first()) {
+      ps.first().display();
+      for (PointSet ps0 = ps.but_first(); !ps0.empty(); ps0 = ps0.but_first()) {
 	System.out.print(" + ");
-	((Point)ps0.first()).display();
+	ps0.first().display();
       }
     }
   }
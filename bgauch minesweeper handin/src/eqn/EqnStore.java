@@ -0,0 +1,370 @@
+package eqn;
+
+/* Copyright (C) 1995 John D. Ramsdell
+
+This file is part of Programmer's Minesweeper (PGMS).
+
+PGMS is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2, or (at your option)
+any later version.
+
+PGMS is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PGMS; see the file COPYING.  If not, write to
+the Free Software Foundation, 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+*/
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.TreeSet;
+import map.Map;
+import map.MapListener;
+import sp.Point;
+
+/**
+ * The class EqnStore holds the equations of the equation strategies.
+ * Each equation in the store is given an id, and for every point, the
+ * store keeps the ids of the equations that contain the point.  A hash
+ * table from equations to ids makes membership, adjoining and removal
+ * take constant expected time, and keeps a single copy of each
+ * equation. <p>
+ * The ids at a point are kept in an array that is replaced, never
+ * changed, when the store changes, and ids are not reused, so an array
+ * returned by at stays valid while the store changes.  The ids at a
+ * point are in the order of their equations, as in a set.Set. <p>
+ * For guessing, the store also keeps, for every point in some
+ * equation, the largest of constant / card over the equations at the
+ * point, and sorts the points by it.  The points whose equations have
+ * changed are noted, and sorted again only when a guess is made.  The
+ * store listens to the map to keep the set of unknown points that are
+ * in no equation, so the point to guess at is found without looking
+ * at every point.
+ * @see Eqn
+ */
+final class EqnStore implements MapListener {
+  private static final int none[] = new int[0];
+
+  private final Map m;
+  private final int r;		// Rows in the board
+  private final int c;		// Columns in the board
+  private final int at[][];	// at[y * c + x] holds the ids of the
+				// equations that use point (x, y)
+  private final float prob[];	// prob[y * c + x] is the largest of
+				// constant / card over the equations
+				// that use point (x, y), or -1
+  private final TreeSet<Long> probs = new TreeSet<Long>(); // The points
+				// with prob[k] >= 0, as key(prob[k], k)
+  private final BitSet changed;	// Points whose equations have changed
+				// since probs was brought up to date
+  private final BitSet open;	// The unknown points in no equation
+  private final HashMap<Eqn, Integer> ids = new HashMap<Eqn, Integer>();
+  private Eqn eqns[] = new Eqn[64]; // eqns[id] is the equation with id
+  private int merged[] = new int[64]; // Scratch arrays for at_any
+  private int scratch[] = new int[64];
+  private int next;		// The next id to give out
+
+  /**
+   * Create an empty store for a map, and start listening to it.
+   * @param m		the map
+   */
+  EqnStore(Map m) {
+    this.m = m;
+    r = m.rows();
+    c = m.columns();
+    at = new int[r * c][];
+    Arrays.fill(at, none);
+    prob = new float[r * c];
+    Arrays.fill(prob, -1.0f);
+    changed = new BitSet(r * c);
+    open = new BitSet(r * c);
+    for (int y = 0; y < r; y++)
+      for (int x = 0; x < c; x++)
+	if (Map.UNPROBED == m.look(x, y))
+	  open.set(y * c + x);
+    m.add_listener(this);
+  }
+
+  /**
+   * Stop listening to the map.
+   */
+  void detach() {
+    m.remove_listener(this);
+  }
+
+  /**
+   * Get the ids of the equations that use a point.
+   * The array must not be changed.
+   * @param x		the x coordinate
+   * @param y		the y coordinate
+   * @return 		the ids, in the order of their equations
+   */
+  int[] at(int x, int y) {
+    return at[y * c + x];
+  }
+
+  int[] at(Point p) {
+    return at(p.x(), p.y());
+  }
+
+  /**
+   * Get the ids of the equations that use any point of an
+   * equation, without repeats.  The ids at each point are merged
+   * in two scratch arrays, so only the result is allocated.
+   * @param e		the equation
+   * @return 		the ids, in the order of their equations
+   */
+  int[] at_any(Eqn e) {
+    int n = 0;			// Ids merged so far, in merged[0..n)
+    for (int k : e.cells()) {
+      int es[] = at[k];
+      if (merged.length < n + es.length) {
+	merged = Arrays.copyOf(merged, 2 * (n + es.length));
+	scratch = new int[merged.length];
+      }
+      n = merge(merged, n, es, scratch);
+      int t[] = merged;		// The result is in scratch
+      merged = scratch;
+      scratch = t;
+    }
+    return Arrays.copyOf(merged, n);
+  }
+
+  /* Merge the first n0 ids of es0 with es1, in equation order, into es,
+   * and return the number of ids in es.  Stored equations are all
+   * different, so equal ids are the only repeats. */
+  private int merge(int es0[], int n0, int es1[], int es[]) {
+    int n = 0;
+    int i = 0;
+    int j = 0;
+    while (i < n0 && j < es1.length)
+      if (es0[i] == es1[j]) {
+	es[n++] = es0[i++];
+	j++;
+      }
+      else if (eqns[es0[i]].less(eqns[es1[j]]))
+	es[n++] = es0[i++];
+      else
+	es[n++] = es1[j++];
+    while (i < n0)
+      es[n++] = es0[i++];
+    while (j < es1.length)
+      es[n++] = es1[j++];
+    return n;
+  }
+
+  /**
+   * Get an equation by its id.  Equations removed
+   * from the store can still be found this way.
+   * @param id		the id
+   * @return 		the equation
+   */
+  Eqn eqn(int id) {
+    return eqns[id];
+  }
+
+  /**
+   * Is an equation in the store?
+   * @param e		the equation
+   * @return 		true if an equal equation is in the store
+   */
+  boolean member(Eqn e) {
+    return ids.containsKey(e);
+  }
+
+  /**
+   * Adjoin an equation to the store.  An equation
+   * with no points is never stored.
+   * @param e		the equation
+   * @return 		true if the equation was not already stored
+   */
+  boolean adjoin(Eqn e) {
+    if (e.card() == 0 || ids.containsKey(e))
+      return false;
+    int id = next++;
+    if (id == eqns.length)
+      eqns = Arrays.copyOf(eqns, 2 * id);
+    eqns[id] = e;
+    ids.put(e, id);
+    for (int k : e.cells()) {
+      int es[] = at[k];
+      int i = search(es, e);	// Keep the ids in equation order
+      int es0[] = new int[es.length + 1];
+      System.arraycopy(es, 0, es0, 0, i);
+      es0[i] = id;
+      System.arraycopy(es, i, es0, i + 1, es.length - i);
+      at[k] = es0;
+      open.clear(k);
+      changed.set(k);
+    }
+    return true;
+  }
+
+  /* The single equation probability that a point in e has a mine. */
+  private static float prob(Eqn e) {
+    return (float)e.constant() / (float)e.card();
+  }
+
+  /* Key of point k in probs.  Probabilities are not negative,
+   * so their bits sort as they do. */
+  private static long key(float p, int k) {
+    return (long)Float.floatToIntBits(p) << 32 | k;
+  }
+
+  /* Bring prob and probs up to date. */
+  private void update() {
+    for (int k = changed.nextSetBit(0); k >= 0; k = changed.nextSetBit(k + 1)) {
+      if (prob[k] >= 0.0f)
+	probs.remove(key(prob[k], k));
+      int es[] = at[k];
+      if (es.length == 0)
+	prob[k] = -1.0f;
+      else {
+	float p = 0.0f;
+	for (int i = 0; i < es.length; i++)
+	  p = Math.max(p, prob(eqns[es[i]]));
+	prob[k] = p;
+	probs.add(key(p, k));
+      }
+    }
+    changed.clear();
+  }
+
+  /* The index at which the equation e belongs in es. */
+  private int search(int es[], Eqn e) {
+    int l = 0;
+    int h = es.length;
+    while (l < h) {
+      int m = (l + h) >>> 1;
+      if (e.less(eqns[es[m]]))
+	h = m;
+      else
+	l = m + 1;
+    }
+    return l;
+  }
+
+  /**
+   * Remove an equation from the store.
+   * @param e		the equation
+   */
+  void remove(Eqn e) {
+    Integer id = ids.remove(e);
+    if (id == null)
+      return;
+    for (int k : e.cells()) {
+      int es[] = at[k];
+      int i = 0;
+      while (es[i] != id)
+	i++;
+      if (es.length == 1) {
+	at[k] = none;
+	if (Map.UNPROBED == m.look(k % c, k / c))
+	  open.set(k);
+      }
+      else {
+	int es0[] = new int[es.length - 1];
+	System.arraycopy(es, 0, es0, 0, i);
+	System.arraycopy(es, i + 1, es0, i, es0.length - i);
+	at[k] = es0;
+      }
+      changed.set(k);
+    }
+  }
+
+  /**
+   * Remove all equations that use a point.
+   * @param p		the point
+   */
+  void remove_at(Point p) {
+    int es[] = at(p);
+    for (int i = 0; i < es.length; i++)
+      remove(eqns[es[i]]);
+  }
+
+  /**
+   * Find the point at which to guess.  Let M(p) be the largest of
+   * constant / card over the equations at point p, or prob0 for an
+   * unknown point in no equation.  The point is an unknown point p
+   * which minimizes M(p).  Of those, it is the first one found when
+   * the rows are searched from row y, and each row from column x,
+   * wrapping around at the edges of the board.
+   * @param x		the column at which to start
+   * @param y		the row at which to start
+   * @param prob0	the value of M(p) for points in no equation
+   * @return		the cell number y * columns + x of the point,
+   *			or -1 if there are no unknown points
+   */
+  int guess(int x, int y, float prob0) {
+    update();
+    float p = probs.isEmpty() ? Float.POSITIVE_INFINITY
+      : Float.intBitsToFloat((int)(probs.first() >>> 32));
+    int k0 = prob0 <= p ? search(-1, x, y) : -1;
+    if (k0 >= 0 && prob0 < p)
+      return k0;
+    int k1 = probs.isEmpty() ? -1 : search(Float.floatToIntBits(p), x, y);
+    if (k0 < 0)
+      return k1;
+    else if (k1 < 0)
+      return k0;
+    else			// A tie, so the first found wins
+      return distance(k1, x, y) < distance(k0, x, y) ? k1 : k0;
+  }
+
+  /* How far the search from (x, y) goes before finding point k. */
+  private int distance(int k, int x, int y) {
+    return (k / c - y + r) % r * c + (k % c - x + c) % c;
+  }
+
+  /* The first point found by the search from (x, y) among the points
+   * with probability bits, or among the open points when bits is -1;
+   * -1 if there are none. */
+  private int search(int bits, int x, int y) {
+    int k = next(bits, y * c + x);
+    if (k >= 0 && k / c == y)	// Row y, from column x
+      return k;
+    k = next(bits, y * c);
+    if (k >= 0 && k / c == y)	// Row y, before column x
+      return k;
+    k = next(bits, (y + 1) * c); // The next row with such points
+    if (k < 0)
+      k = next(bits, 0);
+    if (k < 0)
+      return -1;
+    int k1 = next(bits, k / c * c + x);
+    return k1 >= 0 && k1 / c == k / c ? k1 : k;
+  }
+
+  /* The first point at or after point k with probability bits, or
+   * the first open point when bits is -1; -1 if there are none. */
+  private int next(int bits, int k) {
+    if (bits < 0)
+      return open.nextSetBit(k);
+    Long e = probs.ceiling((long)bits << 32 | k);
+    if (e == null || (int)(e >>> 32) != bits)
+      return -1;
+    else
+      return (int)(long)e;
+  }
+
+  /* MapListener methods */
+
+  public void revealed(int x, int y, int q) {
+    open.clear(y * c + x);
+  }
+
+  public void marked(int x, int y) {
+    open.clear(y * c + x);
+  }
+
+  public void unmarked(int x, int y) {
+    if (at(x, y).length == 0)
+      open.set(y * c + x);
+  }
+}
@@ -23,6 +23,7 @@ Boston, MA 02111-1307, USA.
 import map.*;
 import set.*;
 import sp.Point;
+import sp.PointSet;
 
 /**
  * The class MioStrategy implements a PGMS strategy.
@@ -33,6 +34,7 @@ import sp.Point;
  * to create your own strategy rather than copy someone else's.
  * @see Strategy
  * @see set.Set
+ * @see sp.PointSet
  * @version April 2003
  * @author John D. Ramsdell
  */
@@ -56,11 +58,15 @@ public final class MioStrategy implements Strategy {
   /* Mine map to which this strategy is applied. */
   private Map m;
 
-  /* em[y][x] contains equation e if point (x, y) is in the equation. */
-  private Set em[][];               // em is short for an equation map
+  /* The equations, indexed by the points they contain. */
+  private EqnStore store;
 
   /* ps contains a set of points that are candidates for the rules. */
-  private Set ps;
+  private PointSet ps;
+
+  /* The points which have values that are not known,
+   * kept up to date by the map. */
+  private UnprobedCells unknown;
 
   /* When the number of unknown locations falls to this limit,
    * a global equation is added. */
@@ -76,14 +82,15 @@ public final class MioStrategy implements Strategy {
   public void play(Map m) {
     this.m = m;
     global_eqn_added = false;
-    init_eqn_map();		// Create initial em array
-    ps = new Set();
+    init_eqn_store();		// Create initial equation store
+    ps = new PointSet(m.columns());
+    unknown = new UnprobedCells(m, false);
 
     while (!m.done()) {
       if (Map.BOOM == choose())	// Guess a location and probe it
-	return;			// Choose modifies the point set ps
+	break;			// Choose modifies the point set ps
       while (!ps.empty()) {
-	Point p = (Point)ps.first();
+	Point p = ps.first();
 	ps = ps.but_first();
 	
 	/* Try applying the rules to point p.
@@ -94,13 +101,12 @@ public final class MioStrategy implements Strategy {
 	
 	/* Add global equation if appropriate. */
 	if (!global_eqn_added) {
-	  int nps0 = unknown_count();
-	  if (nps0 <= global_eqn_limit) {
+	  if (unknown.count() <= global_eqn_limit) {
 	    global_eqn_added = true;
 	    ps = unknown_points();
 	    /* The number of mines minus the number of marks
 	     * equals the sum of the values at the unknown points. */
-	    adjoin(new Eqn(m.mines_minus_marks(), ps));
+	    store.adjoin(new Eqn(m.mines_minus_marks(), ps));
 	  }
 	}
       }
@@ -111,31 +117,19 @@ public final class MioStrategy implements Strategy {
       else
 	System.out.println("Game lost.");
     }
-    em = null;
-  }
-
-  private Set unknown_points() { // This routine returns the
-    int r = m.rows();		 // set of points which have
-    int c = m.columns();	 // values that are not known.
-    Set ps = new Set();
-
-    for (int y = r - 1; y >= 0; y--)
-      for (int x = c - 1; x >= 0; x--)
-        if (Map.UNPROBED == m.look(x, y))
-	  ps = ps.adjoin(new Point(x, y));
-    return ps;
+    unknown.detach();
+    unknown = null;
+    store.detach();
+    store = null;
   }
 
-  private int unknown_count() {  // This routine returns the
-    int r = m.rows();		 // number of points which have
-    int c = m.columns();	 // values that are not known.
-    int n = 0;
+  private PointSet unknown_points() { // This routine returns the
+    int cells[] = new int[unknown.count()]; // set of points which have
+    int n = 0;				      // values that are not known.
 
-    for (int y = r - 1; y >= 0; y--)
-      for (int x = c - 1; x >= 0; x--)
-        if (Map.UNPROBED == m.look(x, y))
-	  n++;
-    return n;
+    for (int k = unknown.first(); k >= 0; k = unknown.next(k))
+      cells[n++] = k;		// Listed by rows, so k is y * c + x
+    return new PointSet(m.columns(), cells, n);
   }
 
   /* Single Equation Rule
@@ -151,17 +145,18 @@ public final class MioStrategy implements Strategy {
    */
   private void single_equation_rule(Point p) {
 
-    for (Set es = at(p); !es.empty(); es = es.but_first()) {
-      Eqn e = (Eqn)es.first();
+    int es[] = store.at(p);
+
+    for (int i = 0; i < es.length; i++) {
+      Eqn e = store.eqn(es[i]);
       int c = e.constant();
-      Set ps = e.points();
 
       if (c == 0) {		// Case 1 above
-	probe_points(ps);
+	probe_points(e.points());
 	return;
       }
-      else if (c == ps.card()) { // Case 2 above
-	mark_points(ps);
+      else if (c == e.card()) { // Case 2 above
+	mark_points(e.points());
 	return;
       }
     }
@@ -178,23 +173,20 @@ public final class MioStrategy implements Strategy {
    *                   - p[0,0] - p[0,1] - ... - p[0,n[0]]
    */
   private void subset_rule(Point p) {
-    Set es = at(p);
+    int es[] = store.at(p);
 
-    for (Set es0 = es; !es0.empty(); es0 = es0.but_first()) {
-      Eqn e0 = (Eqn)es0.first();
+    for (int i0 = 0; i0 < es.length; i0++) {
+      Eqn e0 = store.eqn(es[i0]);
 
-      for (Set es1 = es; !es1.empty(); es1 = es1.but_first()) {
-	Eqn e1 = (Eqn)es1.first();
+      for (int i1 = 0; i1 < es.length; i1++) {
+	Eqn e1 = store.eqn(es[i1]);
 	int c_diff = e1.constant() - e0.constant();
 	
-	if (c_diff >= 0 && e0.points().proper_subset(e1.points())) {
-	  Set ps0 = e1.points().set_difference(e0.points());
-	  Eqn e = new Eqn(c_diff, ps0);
+	if (c_diff >= 0 && e0.proper_subset(e1)) {
+	  Eqn e = e1.minus(e0);
 	
-	  if (!member(e)) {
-	    adjoin(e);
-	    ps = ps.union(ps0);
-	  }
+	  if (store.adjoin(e))
+	    ps = ps.union(e.points());
 	}
       }
     }
@@ -226,38 +218,33 @@ public final class MioStrategy implements Strategy {
    * Equation difference with three equations is the Mio inspired rule.
    */
   private void eqn_diff_rule(Point p) {
-    Set es = at(p);
+    int es[] = store.at(p);
 
-    for (Set es0 = es; !es0.empty(); es0 = es0.but_first()) {
-      Eqn e0 = (Eqn)es0.first();
+    for (int i0 = 0; i0 < es.length; i0++) {
+      Eqn e0 = store.eqn(es[i0]);
 
-      for (Set es1 = es; !es1.empty(); es1 = es1.but_first()) {
-	Eqn e1 = (Eqn)es1.first();
+      for (int i1 = 0; i1 < es.length; i1++) {
+	Eqn e1 = store.eqn(es[i1]);
 	int c_diff = e1.constant() - e0.constant();
 	
 	if (c_diff > 0) {
-	  Set ps = e1.points().set_difference(e0.points());
+	  int n = e1.card_minus(e0);
 
-	  if (ps.card() == c_diff) {
-	    mark_points(ps);
-	    probe_points(e0.points().set_difference(e1.points()));
+	  if (n == c_diff) {
+	    mark_points(e1.minus(e0).points());
+	    probe_points(e0.minus(e1).points());
 	  }
 	  else if (c_diff > 1) { // Try double elimination -- the Mio trick
-	    Set es2 = new Set();
-
-	    for (Set ps0 = ps; !ps0.empty(); ps0 = ps0.but_first()) {
-	      Point p1 = (Point)ps0.first();
-	      es2 = es2.union(at(p1));
-	    }
-	    // es2 is the equations that contain a point in ps.
-	    for (; !es2.empty(); es2 = es2.but_first()) {
-              Eqn e2 = (Eqn)es2.first();
+	    Eqn e = e1.minus(e0);
+	    int es2[] = store.at_any(e);
+	    // es2 is the equations that contain a point in e.
+	    for (int i2 = 0; i2 < es2.length; i2++) {
+              Eqn e2 = store.eqn(es2[i2]);
 	      int c_diff2 = c_diff - e2.constant();
 	      if (c_diff2 > 0) {
-		Set ps2 = ps.set_difference(e2.points());
-		if (ps2.card() == c_diff2) {
-		  mark_points(ps2);
-		  Set ps3 = e0.points().union(e2.points());
+		if (e.card_minus(e2) == c_diff2) {
+		  mark_points(e.minus(e2).points());
+		  PointSet ps3 = e0.points().union(e2.points());
 		  ps3 = ps3.set_difference(e1.points());
 		  ps3 = ps3.union(e0.points().intersect(e2.points()));
 		  probe_points(ps3);
@@ -270,121 +257,66 @@ public final class MioStrategy implements Strategy {
     }
   }
 
-  private void probe_points(Set ps0) { // ps0 is a set of point known
+  private void probe_points(PointSet ps0) { // ps0 is a set of point known
 				       // not to contain mines
     for (; !ps0.empty(); ps0 = ps0.but_first()) {
-      Point p = (Point)ps0.first();
+      Point p = ps0.first();
       int q = m.probe(p.x(), p.y()); // assert(q >= 0)
       if (messages && q < 0)
 	System.out.println("Probe kills");
 
       /* Propagate assertion that point p does not contain a mine
        * by adjoining the equation 0 = p, and applying the subset rule. */
-      adjoin(new Eqn(0, new Set().adjoin(p)));
+      store.adjoin(new Eqn(0, m.columns(), p.x(), p.y(), 1L));
       subset_rule(p);
-      remove_at(p);		// Dump equations at p
+      store.remove_at(p);	// Dump equations at p
 
       /* Add an equation using the information found by the probe. */
-      Set ps1 = unknowns_near(p.x(), p.y());
-      adjoin(new Eqn(q - marks_near(p.x(), p.y()), ps1));
-      ps = ps.union(ps1);
+      Eqn e = eqn_near(p.x(), p.y(), q);
+      store.adjoin(e);
+      ps = ps.union(e.points());
     }
   }
 
-  private void mark_points(Set ps) { // ps0 is a set of point known
+  private void mark_points(PointSet ps) { // ps0 is a set of point known
 				     // to contain mines
     for (; !ps.empty(); ps = ps.but_first()) {
-      Point p = (Point)ps.first();
+      Point p = ps.first();
       int q = m.mark(p.x(), p.y()); // assert(q == Map.MARKED)
       if (messages && q != Map.MARKED)
 	System.out.println("Mark misses");
 
       /* Propagate assertion that point p contains a mine
        * by adjoin the equation 1 = p, and applying the subset rule. */
-      adjoin(new Eqn(1, new Set().adjoin(p)));
+      store.adjoin(new Eqn(1, m.columns(), p.x(), p.y(), 1L));
       subset_rule(p);
-      remove_at(p);		// Dump equations at p
-    }
-  }
-
-  /* Remove all equations that contain point p. */
-  private void remove_at(Point p) {
-    for (Set es = at(p); !es.empty(); es = es.but_first()) {
-      Eqn e = (Eqn)es.first();
-      remove(e);
+      store.remove_at(p);	// Dump equations at p
     }
   }
 
-  private void init_eqn_map() {	// Initialize the equation map em
-    Set mt = new Set();
+  private void init_eqn_store() { // Initialize the equation store
     int r = m.rows();
     int c = m.columns();
 
-    em = new Set[r][c];
-
-    for (int y = 0; y < r; y++)
-      for (int x = 0; x < c; x++)
-        em[y][x] = mt;
+    store = new EqnStore(m);
 
     for (int y = 0; y < r; y++)
       for (int x = 0; x < c; x++) {
 	int q = m.look(x, y);
 
 	if (q >= 0)
-	  adjoin(new Eqn(q - marks_near(x, y), unknowns_near(x, y)));
+	  store.adjoin(eqn_near(x, y, q));
       }
   }
 
-  private Set unknowns_near(int x, int y) { // Returns the set of points
-    Set ps = new Set();			    // near the point (x, y) that
-					    // have values which are
-    for (int y0 = y - 1; y0 < y + 2; y0++)  // not known
-      for (int x0 = x - 1; x0 < x + 2; x0++)
-        if (Map.UNPROBED == m.look(x0, y0))
-          ps = ps.adjoin(new Point(x0, y0));
-    return ps;
-  }
-
-  private int marks_near(int x, int y) { // Returns the number of marks
-    int q = 0;				 // near the point (x, y)
+  private Eqn eqn_near(int x, int y, int q) { // Returns the equation
+    int n = m.neighborhood(x, y);		 // found by probing (x, y),
+    int marks = Integer.bitCount(n & Map.NEAR_MARKED); // which revealed q
 
-    for (int y0 = y - 1; y0 < y + 2; y0++)
-      for (int x0 = x - 1; x0 < x + 2; x0++)
-        if (Map.MARKED == m.look(x0, y0))
-          q++;
-    return q;
-  }
-
-  /* Operations on equation maps. */
-
-  private Set at(Point p) {	// Get the equations that use point p
-    return em[p.y()][p.x()];
-  }
-
-  private boolean member(Eqn e) { // Is e in the equation map?
-    Set ps = e.points();
-
-    return !ps.empty() && at((Point)ps.first()).member(e);
-  }
-
-  private void adjoin(Eqn e) { // Add e to the equation map
-    if (!member(e))
-      for (Set ps0 = e.points(); !ps0.empty(); ps0 = ps0.but_first()) {
-	Point p = (Point)ps0.first();
-	int y = p.y();
-	int x = p.x();
-	em[y][x] = em[y][x].adjoin(e);
-      }
-  }
-
-  private void remove(Eqn e) { // Remove e from the equation map
-    if (member(e))
-      for (Set ps0 = e.points(); !ps0.empty(); ps0 = ps0.but_first()) {
-	Point p = (Point)ps0.first();
-	int y = p.y();
-	int x = p.x();
-	em[y][x] = em[y][x].remove(e);
-      }
+    /* The points near (x, y) with values that are not known, moved
+     * from rows of three bits to the rows of a window at (x-1, y-1). */
+    long w = (n & 07) | (long)(n & 070) << 5 | (long)(n & 0700) << 10;
+    return new Eqn(q - marks, m.columns(), x - 1, y - 1, w);
   }
 
   /*
@@ -393,7 +325,7 @@ public final class MioStrategy implements Strategy {
    * e.  Assuming nothing else in know about point p, the single equation
    * probability that p contains a mine based on equation e is
    *
-   *      P(e) = e.constant() / e.points().card().
+   *      P(e) = e.constant() / e.card().
    *
    * Let es(p) be the set of equations that contain point p.  Let M(p)
    * be the maximum of the single equation probabilities that p contains
@@ -402,63 +334,25 @@ public final class MioStrategy implements Strategy {
    *      M(p) = max P(e) for e in es(p).
    *
    * This routine picks a point p which minimizes M(p).  A random choice
-   * is made when there are many points that minimize M(p).
+   * is made when there are many points that minimize M(p): the search
+   * for p starts at a random unknown point.  The equation store keeps
+   * the points sorted by M(p), so the board is not searched point by
+   * point.
    *
    * Last updated: February 1997
    */
   private int choose() {
-    int r = m.rows();
     int c = m.columns();
 
-    Set ps0 = unknown_points();
-    int nps0 = ps0.card();
+    int nps0 = unknown.count();
     if (nps0 == 0)		// Just in case...
       return 0;
     float prob0 = (float)m.mines_minus_marks() / (float)nps0;
 
-    for (int n = m.pick(nps0); n > 0; n--) // Pick starting point
-      ps0 = ps0.but_first();
-
-    Point best_point = (Point)ps0.first();
-    int y_orig = best_point.y();
-    int x_orig = best_point.x();
-
-    float best_prob = prob(x_orig, y_orig, prob0);
-
-    for (int j = 0; j < r; j++) { // Try the rest of the points.
-      int y = (j + y_orig) % r;
-      for (int i = 0; i < c; i++) {
-	int x = (i + x_orig) % c;
-	float p = prob(x, y, prob0);
-	
-	if (p < best_prob) {
-	  best_prob = p;
-	  best_point = new Point(x, y);
-	}
-      }
-    }
-	
-    return tap(best_point);
-  }
+    int k = unknown.select(m.pick(nps0)); // Pick starting point
 
-  // Find max prop of all the equations
-  private float prob(int x, int y, float prob0) {
-    Set es = em[y][x];
-    if (es.empty()) {
-      if (Map.UNPROBED == m.look(x, y))
-	return prob0;
-      else
-	return 1.0f;
-    }
-    else {
-      float p = 0.0f;
-      for (; !es.empty(); es = es.but_first()) {
-        Eqn e = (Eqn)es.first();
-	float e_prob = (float)e.constant() / (float)e.points().card();
-	p = Math.max(p, e_prob);
-      }
-      return p;
-    }
+    int best = store.guess(unknown.x(k), unknown.y(k), prob0);
+    return tap(new Point(best % c, best / c));
   }
 
   private int tap(Point p) {	// Try probing
@@ -472,21 +366,24 @@ public final class MioStrategy implements Strategy {
     int q = m.probe(p.x(), p.y());
 
     if (q >= 0)			// Probe point if a mine was not found.
-      probe_points(new Set().adjoin(p));
+      probe_points(new PointSet(m.columns()).adjoin(p));
     return q;
   }
 
   /* Routines for debugging.  None are used during a normal run. */
 
   private Set all_eqns() {	// Collects all equations
-    Set es = new Set();
+    SetBuilder es = new SetBuilder();
     int r = m.rows();
     int c = m.columns();
 
-    for (int y = r - 1; y >= 0; y--)
-      for (int x = c - 1; x >= 0; x--)
-        es = es.union(em[y][x]);
-    return es;
+    for (int y = 0; y < r; y++)
+      for (int x = 0; x < c; x++) {
+	int es0[] = store.at(x, y);
+	for (int i = 0; i < es0.length; i++)
+	  es.adjoin(store.eqn(es0[i]));
+      }
+    return es.make();
   }
 
   private void display() {
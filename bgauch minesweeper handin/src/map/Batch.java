@@ -0,0 +1,167 @@
+package map;
+
+/* Copyright (C) 1995 John D. Ramsdell
+
+This file is part of Programmer's Minesweeper (PGMS).
+
+PGMS is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2, or (at your option)
+any later version.
+
+PGMS is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PGMS; see the file COPYING.  If not, write to
+the Free Software Foundation, 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+*/
+
+/**
+ * The class Batch plays many games of minesweeper without a display.
+ * Unlike PGMS, which is an applet, this class and the classes it uses
+ * load nothing from <code>java.awt</code>, so batch runs start quickly
+ * and work on machines without a display.
+ * @see PGMS
+ * @see Tournament
+ */
+public final class Batch {
+
+  private Batch() { }
+
+  /**
+   * Application entry point.
+   * @param args        program arguments
+   * <dl>
+   * <dt> <code>-b</code>
+   * <dd> play beginner games
+   * <dt> <code>-i</code>
+   * <dd> play intermediate games
+   * <dt> <code>-e</code>
+   * <dd> play expert games
+   * <dt> <code>-c</code> <var>size</var> <var>density</var>
+   * <dd> play custom games on a square board of the given size,
+   * with the given fraction of cells containing mines;
+   * the board may have at most <code>Integer.MAX_VALUE</code> cells
+   * <dt> <code>-s</code> <var>strategy class name</var>
+   * <dd> play with given strategy
+   * <dt> <code>-n</code> <var>number of games</var>
+   * <dd> number of games to play
+   * <dt> <code>-t</code> <var>number of threads</var>
+   * <dd> number of threads - defaults to the number of
+   * available processors
+   * <dt> <code>-r</code> <var>seed</var>
+   * <dd> seed from which the games are generated
+   * <dt> <code>-p</code>
+   * <dd> play on packed mine maps, which need much less memory
+   * on very large boards
+   * </dl>
+   */
+  public static void main(String args[]) {
+    String strategy_name = "sp.SinglePointStrategy";
+    String game_name = "beginner";
+    int mines = 10;		// Beginner game
+    int rows = 8;
+    int columns = 8;
+    int size = 0;
+    double density = 0.0;
+    int tries = 1;
+    int threads = Runtime.getRuntime().availableProcessors();
+    Long seed = null;
+    boolean packed = false;
+
+    try {
+      for (int i = 0; i < args.length; i++) // Process args
+	if (args[i].equals("-b")) {
+	  game_name = "beginner";
+	  mines = 10;		// Beginner game
+	  rows = 8;
+	  columns = 8;
+	}
+	else if (args[i].equals("-i")) {
+	  game_name = "intermediate";
+	  mines = 40;		// Intermediate game
+	  rows = 13;
+	  columns = 15;
+	}
+	else if (args[i].equals("-e")) {
+	  game_name = "expert";
+	  mines = 99;		// Expert game
+	  rows = 16;
+	  columns = 30;
+	}
+	else if (args[i].equals("-c")) {
+	  game_name = "custom";
+	  size = Integer.parseInt(args[++i]);
+	  density = Double.parseDouble(args[++i]);
+	  if ((long)size * size > Integer.MAX_VALUE) {
+	    System.out.println("Size too large: a board of " + size
+			       + " by " + size + " has more than "
+			       + Integer.MAX_VALUE + " cells");
+	    return;
+	  }
+	  rows = size;
+	  columns = size;
+	  mines = (int)((long)rows * columns * density);
+	}
+	else if (args[i].equals("-s"))
+	  strategy_name = args[++i];
+	else if (args[i].equals("-n"))
+	  tries = Math.max(1, Integer.parseInt(args[++i]));
+	else if (args[i].equals("-t"))
+	  threads = Math.max(1, Integer.parseInt(args[++i]));
+	else if (args[i].equals("-r"))
+	  seed = Long.parseLong(args[++i]);
+	else if (args[i].equals("-p"))
+	  packed = true;
+	else {
+	  usage();
+	  return;
+	}
+    } catch (ArrayIndexOutOfBoundsException e) {
+      usage();
+      return;
+    } catch (NumberFormatException e) {
+      System.out.println("Bad number: " + e.getMessage());
+      usage();
+      return;
+    }
+
+    Tournament t = seed == null
+      ? new Tournament(strategy_name, mines, rows, columns)
+      : new Tournament(strategy_name, mines, rows, columns, seed);
+    t.use_packed_maps(packed);
+    try {
+      t.play(tries, threads);
+    } catch (ReflectiveOperationException e) {
+      System.out.println("Cannot create strategy " + strategy_name);
+      return;
+    } catch (ClassCastException e) {
+      System.out.println("Cannot create strategy " + strategy_name);
+      return;
+    } catch (Exception e) {
+      String message = e.getMessage();
+      System.out.println("Cannot play strategy " + strategy_name + ": "
+			 + (message == null ? e.toString() : message));
+      return;
+    }
+
+    System.out.println("Strategy: " + strategy_name);
+    System.out.println("Difficulty: " + game_name);
+    if (game_name.equals("custom")) {
+      System.out.println("Size: " + size);
+      System.out.println("Density: " + density);
+    }
+    System.out.println("Threads: " + threads);
+    t.report(System.out);
+  }
+
+  private static void usage() {
+    System.out.println("Usage: java map.Batch [-b] [-i] [-e] [-c size density]"
+		       + " [-s strategy_name] [-n number_of_games]"
+		       + " [-t number_of_threads] [-r seed] [-p]");
+  }
+}
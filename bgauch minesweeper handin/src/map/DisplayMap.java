@@ -188,6 +188,17 @@ class DisplayMap extends Canvas implements Map, Runnable {
 		return q1;
 	}
 
+	public int[] probe_cascade(int x, int y) {
+		int cells[] = m.probe_cascade(x, y);
+		if (cells.length > 0) {
+			for (int i = 0; i < cells.length; i++)
+				needs_update[cells[i] / c][cells[i] % c] = true;
+			repaint();			// When a change to the display is made
+			pause();				// pause so it can be seen
+		}
+		return cells;
+	}
+
 	public int mark(int x, int y) {
 		int q0 = m.look(x, y);
 		int q1 = m.mark(x, y);
@@ -238,6 +249,10 @@ class DisplayMap extends Canvas implements Map, Runnable {
 		return m.look(x, y);
 	}
 
+	public int neighborhood(int x, int y) {
+		return m.neighborhood(x, y);
+	}
+
 	public boolean won() {
 		return m.won();
 	}
@@ -266,6 +281,14 @@ class DisplayMap extends Canvas implements Map, Runnable {
 		m.display();
 	}
 
+	public void add_listener(MapListener l) {
+		m.add_listener(l);
+	}
+
+	public void remove_listener(MapListener l) {
+		m.remove_listener(l);
+	}
+
 	/**
 	 * Runs a strategy.
 	 * @see Strategy#play
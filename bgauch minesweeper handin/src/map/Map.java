@@ -91,6 +91,26 @@ public interface Map {
    */
   int probe(int x, int y);
   
+  /**
+   * Probe a cell, and if it has no adjacent mines, probe its neighbors,
+   * continuing for as long as newly probed cells have no adjacent mines.
+   * Every cell probed this way is known not to contain a mine, except
+   * possibly the first.
+   * <ul>
+   * <li> If the game is finished, or the cell does not exist, is marked
+   * or has already been probed, nothing is probed.
+   * <li> Otherwise the cell is probed as by probe; if it has a mine,
+   * the game is lost and no other cell is probed.
+   * </ul>
+   * The result lists the cells probed, in the order they were probed.
+   * Cell (x, y) is listed as <code>y * columns() + x</code>.
+   * Use look to find the value of each cell.
+   * @param x        x coordinate of cell
+   * @param y        y coordinate of cell
+   * @return         the cells probed, which may be none
+   */
+  int[] probe_cascade(int x, int y);
+  
   /**
    * Look at a cell.
    * <ul>
@@ -156,6 +176,49 @@ public interface Map {
    */ 
   int columns();
 
+  /**
+   * Mask selecting the unprobed cells from the result of neighborhood.
+   * @see Map#neighborhood
+   */
+  int NEAR_UNPROBED = 0x1ff;
+
+  /**
+   * Mask selecting the marked cells from the result of neighborhood.
+   * @see Map#neighborhood
+   */
+  int NEAR_MARKED = 0x1ff << 9;
+
+  /**
+   * Look at a cell and its neighbors in one operation.
+   * The nine cells (x + dx, y + dy), where dx and dy range over
+   * -1, 0 and 1, are numbered k = 3 * (dy + 1) + (dx + 1).
+   * <ul>
+   * <li> Bit k of the result is set if look would return
+   * <code>UNPROBED</code> for cell k.
+   * <li> Bit k + 9 of the result is set if look would return
+   * <code>MARKED</code> for cell k.
+   * </ul>
+   * Cells that do not exist set neither bit.  The number of unprobed
+   * cells near (x, y) is
+   * <code>Integer.bitCount(neighborhood(x, y) &amp; NEAR_UNPROBED)</code>.
+   * @param x        x coordinate of cell
+   * @param y        y coordinate of cell
+   */
+  int neighborhood(int x, int y);
+
+  /**
+   * Add a listener to be told of every change made to this map.
+   * @param l        the listener
+   * @see MapListener
+   */
+  void add_listener(MapListener l);
+
+  /**
+   * Remove a listener added with add_listener.
+   * @param l        the listener
+   */
+  void remove_listener(MapListener l);
+
   /**
    * Display the mine map on the standard output stream.
    * Used only for debugging.
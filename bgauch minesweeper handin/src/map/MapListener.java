@@ -0,0 +1,56 @@
+package map;
+
+/* Copyright (C) 1995 John D. Ramsdell
+
+This file is part of Programmer's Minesweeper (PGMS).
+
+PGMS is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2, or (at your option)
+any later version.
+
+PGMS is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PGMS; see the file COPYING.  If not, write to
+the Free Software Foundation, 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+*/
+
+/**
+ * A MapListener is told of every change made to a mine map.
+ * Strategies can use listeners to keep their own view of the map
+ * up to date, rather than repeatedly looking at every cell.
+ * A listener is called by the map during the operation that made
+ * the change, before the operation returns.
+ * @see Map#add_listener
+ * @see UnprobedCells
+ */
+public interface MapListener {
+
+  /**
+   * A cell has been probed for the first time.
+   * @param x        x coordinate of cell
+   * @param y        y coordinate of cell
+   * @param q        <code>Map.BOOM</code>, or the number of
+   *                 adjacent mines
+   */
+  void revealed(int x, int y, int q);
+
+  /**
+   * An unprobed cell has been marked.
+   * @param x        x coordinate of cell
+   * @param y        y coordinate of cell
+   */
+  void marked(int x, int y);
+
+  /**
+   * A marked cell has been unmarked.
+   * @param x        x coordinate of cell
+   * @param y        y coordinate of cell
+   */
+  void unmarked(int x, int y);
+}
@@ -20,6 +20,9 @@ the Free Software Foundation, 59 Temple Place - Suite 330,
 Boston, MA 02111-1307, USA.
 */
 
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
 /**
  * The class Map implements a mine map.  A strategy operates on a mine
  * map. By invoking the operations of probing and marking, the strategy
@@ -50,6 +53,18 @@ public class MineMap implements Map {
    */
   boolean unprobed_map[][];
 
+  /* Number of cells without mines that have not been probed.
+   * The game is won when this count is zero the next time done
+   * is called. */
+  int safe_unprobed;
+
+  /* The source of random numbers for this game.  Each map has its own
+   * generator, so maps used by different threads share no state. */
+  private SplittableRandom random;
+
+  /* Listeners told of changes to this map. */
+  private MapListener listeners[] = new MapListener[0];
+
   private MineMap() { }
 
   /**
@@ -60,6 +75,22 @@ public class MineMap implements Map {
    * @return 		a mine map
    */
   MineMap(int mines, int rows, int columns) {
+    this(mines, rows, columns, new SplittableRandom());
+  }
+
+  /**
+   * Create a mine map using a given source of random numbers.
+   * Both the placement of mines and the numbers returned by pick
+   * are drawn from the source, so a map created from a generator
+   * with a known seed can be reproduced exactly.
+   * @param mines	number of mines in mine map
+   * @param rows        rows in map
+   * @param columns     columns in map
+   * @param random	source of random numbers, owned by the map
+   * @return 		a mine map
+   */
+  MineMap(int mines, int rows, int columns, SplittableRandom random) {
+    this.random = random;
     mmm = mines;
     r = rows;
     c = columns;
@@ -69,40 +100,62 @@ public class MineMap implements Map {
     unprobed_map = new boolean[r][c];
     
     for (int y = 0; y < r; y++)
-      for (int x = 0; x < c; x++) {
-	mine_map[y][x] = 0;
-	mark_map[y][x] = false;
-	unprobed_map[y][x] = true;
-      }
+      Arrays.fill(unprobed_map[y], true);
     
-    if (mines / 2 >= r * c)	// Odd parameters
+    int cells = r * c;
+    safe_unprobed = Math.max(0, cells - mines);
+
+    if (mines / 2 >= cells)	// Odd parameters
       finished = true;		// Just punt
     else {
-      for (int k = mines; k > 0;) { // Place mines randomly
-	int x = pick(c);
-	int y = pick(r);
-	if (mine_map[y][x] >= 0) {
-	  mine_map[y][x] = BOOM;
-	  k--;
-	}
-      }
+      place_mines(Math.min(mines, cells));
       
       for (int y = 0; y < r; y++) // Compute weights
 	for (int x = 0; x < c; x++)
-	  if (mine_map[y][x] >= 0) {
-	    int w = 0;
+	  if (mine_map[y][x] < 0) { // Count this mine in its neighbors
 	    int y0 = Math.max(0, y - 1);
 	    int y1 = Math.min(r, y + 2);
 	    int x0 = Math.max(0, x - 1);
 	    int x1 = Math.min(c, x + 2);
 	    for (int yw = y0; yw < y1; yw++)
 	      for (int xw = x0; xw < x1; xw++)
-		if (mine_map[yw][xw] < 0) w++;
-	    mine_map[y][x] = w;
+		if (mine_map[yw][xw] >= 0) mine_map[yw][xw]++;
 	  }
     }
   }
 
+  /*
+   * Place mines randomly by shuffling the first k entries of the list
+   * of cells, where k is the number of mines or, on a board that is
+   * mostly mines, the number of cells without mines.  Every placement
+   * of the mines is equally likely, and no random number is wasted.
+   */
+  private void place_mines(int mines) {
+    int cells = r * c;
+    boolean dense = mines > cells / 2;
+    int k = dense ? cells - mines : mines;
+    int cell[] = new int[cells];
+
+    for (int i = 0; i < cells; i++)
+      cell[i] = i;
+    for (int i = 0; i < k; i++) { // Partial Fisher-Yates shuffle
+      int j = i + pick(cells - i);
+      int t = cell[i];
+      cell[i] = cell[j];
+      cell[j] = t;
+    }
+
+    if (dense) {		// Mine every cell but the first k
+      for (int y = 0; y < r; y++)
+	Arrays.fill(mine_map[y], BOOM);
+      for (int i = 0; i < k; i++)
+	mine_map[cell[i] / c][cell[i] % c] = 0;
+    }
+    else
+      for (int i = 0; i < k; i++)
+	mine_map[cell[i] / c][cell[i] % c] = BOOM;
+  }
+
   /**
    * Pick a number at random.
    * @param n           a positive number
@@ -111,8 +164,23 @@ public class MineMap implements Map {
   public int pick(int n) {
     if (n <= 0)
       throw new IllegalArgumentException("n must be positive");
-    int p = (int)Math.floor((double)n * Math.random());
-    return p >= n ? p - n : p;
+    return random.nextInt(n);
+  }
+
+  /**
+   * Create the source of random numbers for one game of a series.
+   * The generator for game n is seeded with the n-th value of the
+   * stream of a generator seeded with the master seed, so it depends
+   * only on the master seed and n, and not on the order or the thread
+   * in which games are played.
+   * @param seed	master seed of the series
+   * @param n		game number, starting from zero
+   * @return		a generator for the game
+   */
+  static SplittableRandom game_random(long seed, long n) {
+    final long gamma = 0x9e3779b97f4a7c15L; // SplittableRandom's increment
+    return new SplittableRandom(new SplittableRandom(seed + n * gamma)
+				.nextLong());
   }
   
   private boolean victory = false;
@@ -134,15 +202,11 @@ public class MineMap implements Map {
    * mine has been probed.
    */
   public boolean done() {
-    if (finished)
-      return true;
-    for (int y = 0; y < r; y++)
-      for (int x = 0; x < c; x++)
-	if (mine_map[y][x] < 0 != unprobed_map[y][x])
-	  return false;
-    finished = true;
-    victory = true;
-    return true;
+    if (!finished && safe_unprobed == 0) {
+      finished = true;		// Every safe cell probed
+      victory = true;
+    }
+    return finished;
   }
 
   /**
@@ -173,14 +237,55 @@ public class MineMap implements Map {
       return OUT_OF_BOUNDS;
     else if (mark_map[y][x])
       return MARKED;
-    unprobed_map[y][x] = false;
     if (mine_map[y][x] < 0)
       finished = true;
-    else
+    else {
       probed = true;
+      if (unprobed_map[y][x])
+	safe_unprobed--;
+    }
+    if (unprobed_map[y][x]) {
+      unprobed_map[y][x] = false;
+      for (MapListener l : listeners)
+	l.revealed(x, y, mine_map[y][x]);
+    }
     return mine_map[y][x];
   }
   
+  /**
+   * Probe a cell, and keep probing while the cells probed have no
+   * adjacent mines.
+   * @see Map#probe_cascade
+   */
+  public int[] probe_cascade(int x, int y) {
+    if (finished || x < 0 || x >= c || y < 0 || y >= r
+	|| !unprobed_map[y][x] || mark_map[y][x])
+      return new int[0];
+    int cells[] = new int[16];
+    int n = 0;
+    probe(x, y);
+    cells[n++] = y * c + x;
+    for (int i = 0; i < n; i++) { // Cells 0 to i - 1 have been expanded
+      x = cells[i] % c;
+      y = cells[i] / c;
+      if (mine_map[y][x] != 0)
+	continue;
+      int y0 = Math.max(0, y - 1);
+      int y1 = Math.min(r, y + 2);
+      int x0 = Math.max(0, x - 1);
+      int x1 = Math.min(c, x + 2);
+      for (int yw = y0; yw < y1; yw++)
+	for (int xw = x0; xw < x1; xw++)
+	  if (unprobed_map[yw][xw] && !mark_map[yw][xw]) {
+	    probe(xw, yw);
+	    if (n == cells.length)
+	      cells = Arrays.copyOf(cells, 2 * n);
+	    cells[n++] = yw * c + xw;
+	  }
+    }
+    return Arrays.copyOf(cells, n);
+  }
+  
   /**
    * Look at a cell.
    * <ul>
@@ -206,6 +311,27 @@ public class MineMap implements Map {
       return mine_map[y][x];
   }
 
+  /**
+   * Look at a cell and its neighbors in one operation.
+   * @see Map#neighborhood
+   */
+  public int neighborhood(int x, int y) {
+    int n = 0;
+    int y0 = Math.max(0, y - 1);
+    int y1 = Math.min(r, y + 2);
+    int x0 = Math.max(0, x - 1);
+    int x1 = Math.min(c, x + 2);
+    for (int yw = y0; yw < y1; yw++)
+      for (int xw = x0; xw < x1; xw++) {
+	int k = 3 * (yw - y + 1) + (xw - x + 1);
+	if (mark_map[yw][xw])
+	  n |= 1 << (k + 9);
+	else if (unprobed_map[yw][xw])
+	  n |= 1 << k;
+      }
+    return n;
+  }
+
   /**
    * Mark a cell.
    * <ul>
@@ -230,6 +356,8 @@ public class MineMap implements Map {
     else if (unprobed_map[y][x]) {
       mmm--;
       mark_map[y][x] = true;
+      for (MapListener l : listeners)
+	l.marked(x, y);
       return MARKED;
     }
     else
@@ -259,6 +387,8 @@ public class MineMap implements Map {
     else if (mark_map[y][x]) {
       mmm++;
       mark_map[y][x] = false;
+      for (MapListener l : listeners)
+	l.unmarked(x, y);
       return UNPROBED;
     }
     else if (unprobed_map[y][x])
@@ -289,6 +419,32 @@ public class MineMap implements Map {
     return c;
   }
 
+  /**
+   * Add a listener to be told of every change made to this map.
+   * @see Map#add_listener
+   */
+  public void add_listener(MapListener l) {
+    MapListener ls[] = new MapListener[listeners.length + 1];
+    System.arraycopy(listeners, 0, ls, 0, listeners.length);
+    ls[listeners.length] = l;
+    listeners = ls;
+  }
+
+  /**
+   * Remove a listener added with add_listener.
+   * @see Map#remove_listener
+   */
+  public void remove_listener(MapListener l) {
+    for (int i = 0; i < listeners.length; i++)
+      if (listeners[i] == l) {
+	MapListener ls[] = new MapListener[listeners.length - 1];
+	System.arraycopy(listeners, 0, ls, 0, i);
+	System.arraycopy(listeners, i + 1, ls, i, ls.length - i);
+	listeners = ls;
+	return;
+      }
+  }
+
   /**
    * Display the mine map on the standard output stream.
    * Used only for debugging.
@@ -31,8 +31,10 @@ Boston, MA 02111-1307, USA.
  * minesweeper using the methods provided by the Map class. <p> 
  * This class provides both an applet for graphical presentations
  * using browsers, and a main routine for applications.
+ * Batch runs that should not load any graphics use Batch instead.
  * @see Strategy
  * @see map.Map
+ * @see Batch
  * @version February 1997
  * @author John D. Ramsdell
  */ 
@@ -60,6 +62,12 @@ public class PGMS extends Applet {
 	 * <dt> <code>-n</code> <var>number of games</var>
 	 * <dd> play multiple games - graphics will be disabled 
 	 * with more than one game 
+	 * <dt> <code>-t</code> <var>number of threads</var>
+	 * <dd> play multiple games on this many threads - defaults
+	 * to the number of available processors
+	 * <dt> <code>-r</code> <var>seed</var>
+	 * <dd> seed from which the games are generated, so that a
+	 * run of games can be repeated
 	 * </dl>
 	 */
 	public static void main(String args[]) {
@@ -69,8 +77,8 @@ public class PGMS extends Applet {
 		int rows = 8;
 		int columns = 8;
 		int tries = 1;
-		int wins = 0;
-		int probed = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		Long seed = null;
 
 		for (int i = 0; i < args.length; i++) // Process args
 			if (args[i].equals("-i")) {
@@ -111,6 +119,34 @@ public class PGMS extends Applet {
 			System.out.println("Bad number of games");
 			usage();
 			return;
+		}
+			else if (args[i].equals("-t"))
+				if (++i >= args.length) { // Thread count supplied
+					usage();
+					return;
+				}
+				else
+					try {
+						threads = Math.max(1, Integer.parseInt(args[i]));
+					} 
+		catch (NumberFormatException e) {
+			System.out.println("Bad number of threads");
+			usage();
+			return;
+		}
+			else if (args[i].equals("-r"))
+				if (++i >= args.length) { // Seed supplied
+					usage();
+					return;
+				}
+				else
+					try {
+						seed = Long.parseLong(args[i]);
+					} 
+		catch (NumberFormatException e) {
+			System.out.println("Bad seed");
+			usage();
+			return;
 		}
 			else {
 				usage();
@@ -161,27 +197,29 @@ public class PGMS extends Applet {
 		System.out.print("Playing " + tries + " " + game_name + " games");
 		System.out.println(" using strategy " + strategy_name);
 
-		for (int n = 1; n <= tries; n++) {
-			Map m = new MineMap(mines, rows, columns); // Create mine map
-			try {
-				s.play(m);			// Play game
-			} catch (Exception e) {
-				System.out.println(e.toString());
-			}
-			if (m.won()) wins++;	// Record results
-			if (m.probed()) probed++;
-			System.out.print(wins
-					+ " wins in "
-					+ n
-					+ " tries -- "
-					+ percent(wins, n));
-			if (probed > 0)
-				System.out.print("%, with "
-						+ probed
-						+ " standard tries -- "
-						+ percent(wins, probed));
-			System.out.println("%.");
+		Tournament t = seed == null
+				? new Tournament(strategy_name, mines, rows, columns)
+				: new Tournament(strategy_name, mines, rows, columns, seed);
+		System.out.println("Seed: " + t.seed());
+		try {
+			t.play(tries, threads);	// Play games
+		} catch (Exception e) {
+			System.out.println(e.toString());
+			return;
 		}
+		int wins = t.wins();
+		int probed = t.probed();
+		System.out.print(wins
+				+ " wins in "
+				+ t.games()
+				+ " tries -- "
+				+ percent(wins, t.games()));
+		if (probed > 0)
+			System.out.print("%, with "
+					+ probed
+					+ " standard tries -- "
+					+ percent(wins, probed));
+		System.out.println("%.");
 	}
 
 	/**
@@ -200,7 +238,8 @@ public class PGMS extends Applet {
 
 	private static void usage() {
 		System.out.println("Usage: java PGMS [-b] [-i] [-e]"
-				+ " [-s strategy_name] [-n number_of_games]");
+				+ " [-s strategy_name] [-n number_of_games]"
+				+ " [-t number_of_threads] [-r seed]");
 		System.out.println("Beginner:     -b");
 		System.out.println("Intermediate: -i");
 		System.out.println("Expert:       -e");
@@ -216,6 +255,12 @@ public class PGMS extends Applet {
 	 * <dl>
 	 * <dt> <code>strategy</code>
 	 * <dd> class name of user supplied strategy
+	 * <dt> <code>n</code>
+	 * <dd> number of games to play without graphics
+	 * <dt> <code>threads</code>
+	 * <dd> number of threads used to play the <code>n</code> games
+	 * <dt> <code>seed</code>
+	 * <dd> seed from which the <code>n</code> games are generated
 	 * <dt> <code>game</code>
 	 * <dd> level of game, one of
 	 * <ul> 
@@ -285,21 +330,21 @@ public class PGMS extends Applet {
 			// Brian
 			// play games with benchmarking
 			int n = Integer.parseInt(nStr);
-			long totalTime = 0;
-			int wins = 0;
-			int cheapLosses = 0;
-			for(int i = 0; i < n; i++){
-				MineMap m = new MineMap(mines, rows, columns);
-				final long startTime = System.currentTimeMillis();
-				s.play(m);
-				if(m.won()){
-					wins++;
-				}
-				else if(!m.probed()){
-					cheapLosses++;
-				}
-				final long endTime = System.currentTimeMillis();
-				totalTime += endTime - startTime;
+			String threadsStr = getParameter("threads");
+			int threads = Runtime.getRuntime().availableProcessors();
+			if(threadsStr != null){
+				threads = Integer.parseInt(threadsStr);
+			}
+			String seedStr = getParameter("seed");
+			Tournament t = seedStr == null
+					? new Tournament(strategy_name, mines, rows, columns)
+					: new Tournament(strategy_name, mines, rows, columns,
+							Long.parseLong(seedStr));
+			try {
+				t.play(n, threads);
+			} catch (Exception e) {
+				System.out.println(e.toString());
+				return;
 			}
 			System.out.println("Strategy: " + strategy_name );
 			System.out.println("Difficulty: " + game );
@@ -307,11 +352,8 @@ public class PGMS extends Applet {
 				System.out.println("Size: " + size );
 				System.out.println("Density: " + density );
 			}
-			System.out.println("w/total: " + wins + "/" + n  + " = " + ((double)wins/n));
-			System.out.println("w/(total-cheapLosses): " + wins + "/" + (n-cheapLosses) + " = " + ((double)wins/(n-cheapLosses)));
-			System.out.println("Total execution time (ms): " + totalTime );
-			// intialize the display to keep an error from being thrown, even though we wont use the display
-			init_display(strategy_name);
+			System.out.println("Threads: " + threads );
+			t.report(System.out);
 		}
 	}
 
@@ -370,11 +412,13 @@ public class PGMS extends Applet {
 	}
 
 	public void start() {
-		m.resume();
+		if (m != null)		// No display when benchmarking
+			m.resume();
 	}
 
 	public void stop() {
-		m.stop();
+		if (m != null)
+			m.stop();
 	}
 
 }
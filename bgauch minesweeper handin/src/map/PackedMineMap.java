@@ -0,0 +1,427 @@
+package map;
+
+/* Copyright (C) 1995 and 1997 John D. Ramsdell
+
+This file is part of Programmer's Minesweeper (PGMS).
+
+PGMS is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2, or (at your option)
+any later version.
+
+PGMS is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PGMS; see the file COPYING.  If not, write to
+the Free Software Foundation, 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+*/
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The class PackedMineMap implements a mine map for very large boards.
+ * It behaves exactly like MineMap, but stores one bit per cell in each
+ * of three bit planes: one for mines, one for marks and one for probed
+ * cells.  The number of mines near a cell is not stored; it is counted
+ * from the mine plane when the cell is probed or looked at. <p>
+ * A board uses a little under half a byte per cell, so a
+ * 20000 by 20000 board needs about 150 megabytes.
+ * @see MineMap
+ * @see Strategy
+ */
+public class PackedMineMap implements Map {
+
+  private int mmm;		// Mines minus marks
+  private int r;		// Rows
+  private int c;		// Columns
+
+  /* Bit i of a plane describes cell (x, y), where i = y * c + x. */
+  private long mine_plane[];	// Set when the cell contains a mine
+  private long mark_plane[];	// Set when the cell is marked
+  private long probed_plane[];	// Set when the cell has been probed
+
+  /* Number of cells without mines that have not been probed. */
+  private long safe_unprobed;
+
+  private SplittableRandom random;
+
+  /* Listeners told of changes to this map. */
+  private MapListener listeners[] = new MapListener[0];
+
+  private boolean victory = false;
+  private boolean finished = false;
+  private boolean probed = false;
+
+  private PackedMineMap() { }
+
+  /**
+   * Create a packed mine map.
+   * @param mines	number of mines in mine map
+   * @param rows        rows in map
+   * @param columns     columns in map
+   * @return 		a mine map
+   */
+  PackedMineMap(int mines, int rows, int columns) {
+    this(mines, rows, columns, new SplittableRandom());
+  }
+
+  /**
+   * Create a packed mine map using a given source of random numbers.
+   * @param mines	number of mines in mine map
+   * @param rows        rows in map
+   * @param columns     columns in map
+   * @param random	source of random numbers, owned by the map
+   * @return 		a mine map
+   * @exception IllegalArgumentException	if the map has more cells
+   *				than an int can number, as cells are
+   *				numbered by ints in probe_cascade
+   */
+  PackedMineMap(int mines, int rows, int columns, SplittableRandom random) {
+    if ((long)rows * columns > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("too many cells: " + rows
+					 + " rows by " + columns + " columns");
+    this.random = random;
+    mmm = mines;
+    r = rows;
+    c = columns;
+
+    long cells = (long)r * c;
+    int words = (int)((cells + 63) >>> 6);
+    mine_plane = new long[words];
+    mark_plane = new long[words];
+    probed_plane = new long[words];
+    safe_unprobed = Math.max(0, cells - mines);
+
+    /* Mines are placed by drawing cells until enough new ones are
+     * found, which needs no memory beyond the planes.  On a board that
+     * is mostly mines, the cells without mines are drawn instead, so
+     * at least half of all draws succeed. */
+    if (mines / 2 >= cells)	// Odd parameters
+      finished = true;		// Just punt
+    else if (mines > cells / 2) { // Mostly mines, so place the
+      Arrays.fill(mine_plane, -1L); // cells without mines instead
+      if (cells % 64 != 0)
+	mine_plane[words - 1] = (1L << cells) - 1;
+      for (long k = cells - mines; k > 0;) {
+	long i = index(pick(c), pick(r));
+	if (get(mine_plane, i)) {
+	  clear(mine_plane, i);
+	  k--;
+	}
+      }
+    }
+    else
+      for (int k = mines; k > 0;) { // Place mines randomly
+	long i = index(pick(c), pick(r));
+	if (!get(mine_plane, i)) {
+	  set(mine_plane, i);
+	  k--;
+	}
+      }
+  }
+
+  private long index(int x, int y) {
+    return (long)y * c + x;
+  }
+
+  private static boolean get(long plane[], long i) {
+    return (plane[(int)(i >>> 6)] & (1L << i)) != 0;
+  }
+
+  private static void set(long plane[], long i) {
+    plane[(int)(i >>> 6)] |= 1L << i;
+  }
+
+  private static void clear(long plane[], long i) {
+    plane[(int)(i >>> 6)] &= ~(1L << i);
+  }
+
+  /* Count the mines in the cells adjacent to cell (x, y). */
+  private int near(int x, int y) {
+    int w = 0;
+    int y0 = Math.max(0, y - 1);
+    int y1 = Math.min(r, y + 2);
+    int x0 = Math.max(0, x - 1);
+    int x1 = Math.min(c, x + 2);
+    for (int yw = y0; yw < y1; yw++)
+      for (int xw = x0; xw < x1; xw++)
+	if (get(mine_plane, index(xw, yw))) w++;
+    return w;
+  }
+
+  /* The value of a cell that is not out of bounds or marked,
+   * as revealed by a probe. */
+  private int value(int x, int y, long i) {
+    return get(mine_plane, i) ? BOOM : near(x, y);
+  }
+
+  /**
+   * Pick a number at random.
+   * @param n           a positive number
+   * @return            a nonnegative number less than n
+   */
+  public int pick(int n) {
+    if (n <= 0)
+      throw new IllegalArgumentException("n must be positive");
+    return random.nextInt(n);
+  }
+
+  /**
+   * Has this game been won?
+   * @see Map#won
+   */
+  public boolean won() {
+    return victory;
+  }
+
+  /**
+   * Is this game finished?
+   * @see Map#done
+   */
+  public boolean done() {
+    if (!finished && safe_unprobed == 0) {
+      finished = true;		// Every safe cell probed
+      victory = true;
+    }
+    return finished;
+  }
+
+  /**
+   * Has this game had at least one successful probe.
+   */
+  public boolean probed() {
+    return probed;
+  }
+
+  /**
+   * Probe a cell for a mine.
+   * @see Map#probe
+   */
+  public int probe(int x, int y) {
+    if (finished)
+      return look(x, y);
+    else if (x < 0 || x >= c || y < 0 || y >= r)
+      return OUT_OF_BOUNDS;
+    long i = index(x, y);
+    if (get(mark_plane, i))
+      return MARKED;
+    if (get(mine_plane, i))
+      finished = true;
+    else {
+      probed = true;
+      if (!get(probed_plane, i))
+	safe_unprobed--;
+    }
+    int q = value(x, y, i);
+    if (!get(probed_plane, i)) {
+      set(probed_plane, i);
+      for (MapListener l : listeners)
+	l.revealed(x, y, q);
+    }
+    return q;
+  }
+
+  /**
+   * Probe a cell, and keep probing while the cells probed have no
+   * adjacent mines.
+   * @see Map#probe_cascade
+   */
+  public int[] probe_cascade(int x, int y) {
+    if (finished || x < 0 || x >= c || y < 0 || y >= r
+	|| get(probed_plane, index(x, y)) || get(mark_plane, index(x, y)))
+      return new int[0];
+    int cells[] = new int[16];
+    int n = 0;
+    int q = probe(x, y);
+    cells[n++] = y * c + x;
+    if (q < 0)
+      return Arrays.copyOf(cells, n);
+    for (int i = 0; i < n; i++) { // Cells 0 to i - 1 have been expanded
+      x = cells[i] % c;
+      y = cells[i] / c;
+      if (near(x, y) != 0)
+	continue;
+      int y0 = Math.max(0, y - 1);
+      int y1 = Math.min(r, y + 2);
+      int x0 = Math.max(0, x - 1);
+      int x1 = Math.min(c, x + 2);
+      for (int yw = y0; yw < y1; yw++)
+	for (int xw = x0; xw < x1; xw++) {
+	  long j = index(xw, yw);
+	  if (!get(probed_plane, j) && !get(mark_plane, j)) {
+	    probe(xw, yw);
+	    if (n == cells.length)
+	      cells = Arrays.copyOf(cells, 2 * n);
+	    cells[n++] = yw * c + xw;
+	  }
+	}
+    }
+    return Arrays.copyOf(cells, n);
+  }
+
+  /**
+   * Look at a cell.
+   * @see Map#look
+   */
+  public int look(int x, int y) {
+    if (x < 0 || x >= c || y < 0 || y >= r)
+      return OUT_OF_BOUNDS;
+    long i = index(x, y);
+    if (get(mark_plane, i))
+      return MARKED;
+    else if (!get(probed_plane, i))
+      return UNPROBED;
+    else
+      return value(x, y, i);
+  }
+
+  /**
+   * Look at a cell and its neighbors in one operation.
+   * @see Map#neighborhood
+   */
+  public int neighborhood(int x, int y) {
+    int n = 0;
+    int y0 = Math.max(0, y - 1);
+    int y1 = Math.min(r, y + 2);
+    int x0 = Math.max(0, x - 1);
+    int x1 = Math.min(c, x + 2);
+    for (int yw = y0; yw < y1; yw++)
+      for (int xw = x0; xw < x1; xw++) {
+	int k = 3 * (yw - y + 1) + (xw - x + 1);
+	long i = index(xw, yw);
+	if (get(mark_plane, i))
+	  n |= 1 << (k + 9);
+	else if (!get(probed_plane, i))
+	  n |= 1 << k;
+      }
+    return n;
+  }
+
+  /**
+   * Mark a cell.
+   * @see Map#mark
+   */
+  public int mark(int x, int y) {
+    if (finished)
+      return look(x, y);
+    else if (x < 0 || x >= c || y < 0 || y >= r)
+      return OUT_OF_BOUNDS;
+    long i = index(x, y);
+    if (get(mark_plane, i))
+      return MARKED;
+    else if (!get(probed_plane, i)) {
+      mmm--;
+      set(mark_plane, i);
+      for (MapListener l : listeners)
+	l.marked(x, y);
+      return MARKED;
+    }
+    else
+      return value(x, y, i);
+  }
+
+  /**
+   * Unmark a cell.
+   * @see Map#unmark
+   */
+  public int unmark(int x, int y) {
+    if (finished)
+      return look(x, y);
+    else if (x < 0 || x >= c || y < 0 || y >= r)
+      return OUT_OF_BOUNDS;
+    long i = index(x, y);
+    if (get(mark_plane, i)) {
+      mmm++;
+      clear(mark_plane, i);
+      for (MapListener l : listeners)
+	l.unmarked(x, y);
+      return UNPROBED;
+    }
+    else if (!get(probed_plane, i))
+      return UNPROBED;
+    else
+      return value(x, y, i);
+  }
+
+  /**
+   * Provide the number of mines minus the
+   * number of marks in this mine map.
+   */
+  public int mines_minus_marks() {
+    return mmm;
+  }
+
+  /**
+   * Provide the number of rows in this mine map.
+   */
+  public int rows() {
+    return r;
+  }
+
+  /**
+   * Provide the number of columns in this mine map.
+   */
+  public int columns() {
+    return c;
+  }
+
+  /**
+   * Add a listener to be told of every change made to this map.
+   * @see Map#add_listener
+   */
+  public void add_listener(MapListener l) {
+    MapListener ls[] = new MapListener[listeners.length + 1];
+    System.arraycopy(listeners, 0, ls, 0, listeners.length);
+    ls[listeners.length] = l;
+    listeners = ls;
+  }
+
+  /**
+   * Remove a listener added with add_listener.
+   * @see Map#remove_listener
+   */
+  public void remove_listener(MapListener l) {
+    for (int i = 0; i < listeners.length; i++)
+      if (listeners[i] == l) {
+	MapListener ls[] = new MapListener[listeners.length - 1];
+	System.arraycopy(listeners, 0, ls, 0, i);
+	System.arraycopy(listeners, i + 1, ls, i, ls.length - i);
+	listeners = ls;
+	return;
+      }
+  }
+
+  /**
+   * Display the mine map on the standard output stream.
+   * Used only for debugging.
+   */
+  public void display() {
+    for (int y = 0; y < r; y++) {
+      int z = r - 1 - y;
+      System.out.print(z % 10 + ":");
+      for (int x = 0; x < c; x++) {
+	long i = index(x, z);
+	if (get(mark_plane, i))
+	  if (get(mine_plane, i))
+	    System.out.print("-");
+	  else
+	    System.out.print("?");
+	else if (get(mine_plane, i))
+	  System.out.print("X");
+	else if (!get(probed_plane, i))
+	  System.out.print(" ");
+	else
+	  System.out.print(near(x, z));
+      }
+      System.out.println();
+    }
+    System.out.print("  ");
+    for (int x = 0; x < c; x++)
+      System.out.print(x % 10);
+  }
+}
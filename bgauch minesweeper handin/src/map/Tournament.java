@@ -0,0 +1,266 @@
+package map;
+
+/* Copyright (C) 1995 John D. Ramsdell
+
+This file is part of Programmer's Minesweeper (PGMS).
+
+PGMS is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2, or (at your option)
+any later version.
+
+PGMS is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PGMS; see the file COPYING.  If not, write to
+the Free Software Foundation, 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+*/
+
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The class Tournament plays many games of minesweeper with one
+ * strategy, spreading the games over a pool of worker threads. <p>
+ * Each worker creates its own instance of the strategy and a fresh
+ * mine map for every game it plays, so strategies need not be thread
+ * safe.  Workers take games from a shared counter until all games
+ * have been played, and their tallies are merged into one result. <p>
+ * Every game draws its random numbers from its own generator, derived
+ * from the master seed of the tournament and the number of the game.
+ * Games therefore share no random state, and a tournament with a given
+ * seed gives the same results whatever the number of threads.
+ * @see Strategy
+ * @see PGMS
+ */
+public final class Tournament {
+  private final String strategy_name;
+  private final int mines;
+  private final int rows;
+  private final int columns;
+  private final long seed;		// Master seed
+  private boolean packed;		// Play on PackedMineMaps?
+
+  private int games;		// Games played
+  private int wins;		// Games won
+  private int probed;		// Games with at least one successful probe
+  private int cheap_losses;	// Games lost without a successful probe
+  private long play_time;	// Nanoseconds spent in Strategy.play
+  private long wall_time;	// Nanoseconds from start to finish
+
+  /**
+   * Create a tournament.
+   * @param strategy_name	class name of the strategy
+   * @param mines		number of mines in each mine map
+   * @param rows		rows in each map
+   * @param columns		columns in each map
+   */
+  public Tournament(String strategy_name, int mines, int rows, int columns) {
+    this(strategy_name, mines, rows, columns, new SplittableRandom().nextLong());
+  }
+
+  /**
+   * Create a tournament with a given master seed.
+   * @param strategy_name	class name of the strategy
+   * @param mines		number of mines in each mine map
+   * @param rows		rows in each map
+   * @param columns		columns in each map
+   * @param seed		master seed from which every game's
+   *				random numbers are derived
+   */
+  public Tournament(String strategy_name, int mines, int rows, int columns,
+		    long seed) {
+    this.strategy_name = strategy_name;
+    this.mines = mines;
+    this.rows = rows;
+    this.columns = columns;
+    this.seed = seed;
+  }
+
+  /**
+   * Choose the implementation of the mine maps.  Packed maps use far
+   * less memory on large boards, at some cost in speed.
+   * @param packed	true to play on PackedMineMaps,
+   *			false to play on MineMaps
+   */
+  public void use_packed_maps(boolean packed) {
+    this.packed = packed;
+  }
+
+  /**
+   * Play games using a number of worker threads.
+   * Results accumulate over repeated calls.
+   * @param n		number of games to play
+   * @param threads	number of worker threads
+   * @exception Exception	if the strategy cannot be created
+   *				or a worker fails, in which case
+   *				the other workers are stopped and
+   *				the worker's exception is thrown
+   */
+  public void play(int n, int threads) throws Exception {
+    strategy(strategy_name);	// Fail early
+    threads = Math.max(1, Math.min(threads, n));
+    final AtomicInteger next = new AtomicInteger(games);
+    final int total = games + n;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<Tournament>> tallies = new ArrayList<Future<Tournament>>();
+    long start = System.nanoTime();
+    try {
+      for (int i = 0; i < threads; i++)
+	tallies.add(pool.submit(new Callable<Tournament>() {
+	    public Tournament call() throws Exception {
+	      Tournament t = new Tournament(strategy_name, mines, rows, columns,
+					    seed);
+	      t.packed = packed;
+	      try {
+		Strategy s = strategy(strategy_name);
+		for (int g = next.getAndIncrement(); g < total;
+		     g = next.getAndIncrement())
+		  t.play_one(s, g);
+		return t;
+	      } catch (Exception e) {
+		next.set(total);	// Other workers start no more games
+		throw e;
+	      }
+	    }
+	  }));
+      for (Future<Tournament> f : tallies)
+	merge(f.get());
+    } catch (ExecutionException e) {
+      pool.shutdownNow();
+      throw cause(e);
+    } finally {
+      pool.shutdown();
+    }
+    wall_time += System.nanoTime() - start;
+  }
+
+  /* Create an instance of a strategy from its class name. */
+  private static Strategy strategy(String name) throws Exception {
+    try {
+      return Class.forName(name).asSubclass(Strategy.class)
+	.getDeclaredConstructor().newInstance();
+    } catch (InvocationTargetException e) {
+      throw cause(e);		// The constructor failed
+    }
+  }
+
+  /* The exception that caused e, to be thrown in its place. */
+  private static Exception cause(Exception e) {
+    Throwable t = e.getCause();
+    if (t instanceof Error)
+      throw (Error)t;
+    else if (t instanceof Exception)
+      return (Exception)t;
+    else
+      return e;
+  }
+
+  /* Play game number n on this thread and record the result. */
+  private void play_one(Strategy s, int n) {
+    SplittableRandom random = MineMap.game_random(seed, n);
+    Map m = packed
+      ? new PackedMineMap(mines, rows, columns, random)
+      : new MineMap(mines, rows, columns, random);
+    long start = System.nanoTime();
+    try {
+      s.play(m);
+    } catch (Exception e) {
+      System.out.println(e.toString());
+    }
+    play_time += System.nanoTime() - start;
+    games++;
+    if (m.won())
+      wins++;
+    else if (!m.probed())
+      cheap_losses++;
+    if (m.probed())
+      probed++;
+  }
+
+  private void merge(Tournament t) {
+    games += t.games;
+    wins += t.wins;
+    probed += t.probed;
+    cheap_losses += t.cheap_losses;
+    play_time += t.play_time;
+  }
+
+  /**
+   * Print a summary of the results.
+   * @param out		the stream on which to print
+   */
+  public void report(PrintStream out) {
+    out.println("w/total: " + wins + "/" + games
+		+ " = " + ((double)wins/games));
+    out.println("w/(total-cheapLosses): " + wins + "/" + (games-cheap_losses)
+		+ " = " + ((double)wins/(games-cheap_losses)));
+    out.println("Seed: " + seed);
+    out.println("Total execution time (ms): " + play_time());
+    out.println("Wall clock time (ms): " + wall_time());
+  }
+
+  /**
+   * Provide the master seed.
+   */
+  public long seed() {
+    return seed;
+  }
+
+  /**
+   * Provide the number of games played.
+   */
+  public int games() {
+    return games;
+  }
+
+  /**
+   * Provide the number of games won.
+   */
+  public int wins() {
+    return wins;
+  }
+
+  /**
+   * Provide the number of games with at least one successful probe.
+   */
+  public int probed() {
+    return probed;
+  }
+
+  /**
+   * Provide the number of games lost on the first probe.
+   */
+  public int cheap_losses() {
+    return cheap_losses;
+  }
+
+  /**
+   * Provide the time spent playing, summed over all games,
+   * in milliseconds.
+   */
+  public long play_time() {
+    return play_time / 1000000;
+  }
+
+  /**
+   * Provide the elapsed time from the start to the end of play,
+   * in milliseconds.
+   */
+  public long wall_time() {
+    return wall_time / 1000000;
+  }
+}
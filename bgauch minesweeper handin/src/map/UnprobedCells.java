@@ -0,0 +1,214 @@
+package map;
+
+/* Copyright (C) 1995 John D. Ramsdell
+
+This file is part of Programmer's Minesweeper (PGMS).
+
+PGMS is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2, or (at your option)
+any later version.
+
+PGMS is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PGMS; see the file COPYING.  If not, write to
+the Free Software Foundation, 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+*/
+
+/**
+ * The class UnprobedCells keeps track of the cells of a mine map that
+ * are neither probed nor marked, that is, the cells at which look
+ * returns <code>UNPROBED</code>.  It listens to the map, so its count
+ * is always current and costs nothing to read, and iterating over the
+ * cells visits only the cells that are still unknown. <p>
+ * The cells are kept in a doubly linked list threaded through two
+ * arrays, in order either by rows or by columns.  A cell is numbered
+ * by its position in that order. <p>
+ * The listed cells are also counted in a Fenwick tree, so the n-th
+ * unknown cell can be selected in time logarithmic in the number of
+ * cells, without walking the list.
+ * @see MapListener
+ */
+public final class UnprobedCells implements MapListener {
+  private final Map m;
+  private final int r;		// Rows
+  private final int c;		// Columns
+  private final boolean by_columns;
+  private final int end;	// Number of cells, used as the list head
+  private final int next[];	// next[i] follows cell i, or is end
+  private final int prev[];	// prev[i] precedes cell i, or is end;
+				// prev[i] < 0 when cell i is not listed
+  private final int tree[];	// tree[k] counts the listed cells from
+				// k - (k & -k) to k - 1
+  private int count;
+
+  /**
+   * Track the unknown cells of a map, and start listening to it.
+   * @param m		the map
+   * @param by_columns	iterate column by column if true,
+   *			otherwise row by row
+   */
+  public UnprobedCells(Map m, boolean by_columns) {
+    this.m = m;
+    this.by_columns = by_columns;
+    r = m.rows();
+    c = m.columns();
+    end = r * c;
+    next = new int[end + 1];
+    prev = new int[end + 1];
+    tree = new int[end + 1];
+    int p = end;
+    for (int i = 0; i < end; i++) {
+      prev[i] = -1;
+      if (Map.UNPROBED == m.look(x(i), y(i))) {
+	next[p] = i;		// Append
+	prev[i] = p;
+	p = i;
+	tree[i + 1] = 1;
+	count++;
+      }
+    }
+    next[p] = end;
+    prev[end] = p;
+    for (int k = 1; k <= end; k++) { // Sum the counts up the tree
+      int j = k + (k & -k);
+      if (j <= end)
+	tree[j] += tree[k];
+    }
+    m.add_listener(this);
+  }
+
+  /**
+   * Stop listening to the map.
+   */
+  public void detach() {
+    m.remove_listener(this);
+  }
+
+  /**
+   * Provide the number of unknown cells.
+   */
+  public int count() {
+    return count;
+  }
+
+  /**
+   * Provide the first unknown cell.
+   * @return		a cell number, or -1 if there are none
+   */
+  public int first() {
+    return next(end);
+  }
+
+  /**
+   * Provide the unknown cell following a cell in the list.
+   * @param i		a cell number
+   * @return		a cell number, or -1 if there are none
+   */
+  public int next(int i) {
+    int j = next[i];
+    return j == end ? -1 : j;
+  }
+
+  /**
+   * Select an unknown cell by its position in the list.  This takes
+   * the same cell as following the list n times from the first,
+   * but in time logarithmic in the number of cells.
+   * @param n		a nonnegative number less than count()
+   * @return		the cell number with n unknown cells before it
+   */
+  public int select(int n) {
+    if (n < 0 || n >= count)
+      throw new IndexOutOfBoundsException("no unknown cell " + n);
+    int i = 0;			// Cells before i number at most n
+    for (int k = Integer.highestOneBit(end); k > 0; k >>= 1)
+      if (i + k <= end && tree[i + k] <= n) {
+	i += k;
+	n -= tree[i];
+      }
+    return i;
+  }
+
+  /* The number of listed cells before cell i. */
+  private int rank(int i) {
+    int n = 0;
+    for (int k = i; k > 0; k -= k & -k)
+      n += tree[k];
+    return n;
+  }
+
+  /* Add d to the count of cell i in the tree. */
+  private void add(int i, int d) {
+    for (int k = i + 1; k <= end; k += k & -k)
+      tree[k] += d;
+  }
+
+  /**
+   * Is a cell unknown?
+   */
+  public boolean contains(int x, int y) {
+    return x >= 0 && x < c && y >= 0 && y < r && prev[cell(x, y)] >= 0;
+  }
+
+  /**
+   * Provide the x coordinate of a cell.
+   */
+  public int x(int i) {
+    return by_columns ? i / r : i % c;
+  }
+
+  /**
+   * Provide the y coordinate of a cell.
+   */
+  public int y(int i) {
+    return by_columns ? i % r : i / c;
+  }
+
+  private int cell(int x, int y) {
+    return by_columns ? x * r + y : y * c + x;
+  }
+
+  /* Insert cell i after cell p. */
+  private void link(int i, int p) {
+    int n = next[p];
+    next[i] = n;
+    prev[i] = p;
+    next[p] = i;
+    prev[n] = i;
+    add(i, 1);
+    count++;
+  }
+
+  private void unlink(int i) {
+    if (prev[i] < 0)
+      return;
+    next[prev[i]] = next[i];
+    prev[next[i]] = prev[i];
+    prev[i] = -1;
+    add(i, -1);
+    count--;
+  }
+
+  /* MapListener methods */
+
+  public void revealed(int x, int y, int q) {
+    unlink(cell(x, y));
+  }
+
+  public void marked(int x, int y) {
+    unlink(cell(x, y));
+  }
+
+  public void unmarked(int x, int y) {
+    int i = cell(x, y);
+    if (prev[i] >= 0)
+      return;
+    int n = rank(i);		// Find the listed cell before i
+    link(i, n == 0 ? end : select(n - 1));
+  }
+}
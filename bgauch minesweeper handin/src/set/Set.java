@@ -25,9 +25,16 @@ Boston, MA 02111-1307, USA.
  * This implementation of sets assumes elements are immutable.  
  * Note that a set may be an element of a set or a component of an
  * element of a set. <p>
- * The elements of a set are stored in a sorted list.  An alternative
- * might use hash tables instead of lists, but hash tables were thought
- * to use too much space. <p>
+ * The elements of a set are stored in a sorted array, which is never
+ * changed once the set has been made.  A set is a slice of its array,
+ * so that sets made by but_first share the array of the original set.
+ * Membership is found by binary search, the cardinality of a set is
+ * known without counting, and union, intersection, difference and
+ * subset are computed by merging two sorted arrays.  An alternative
+ * might use hash tables instead of arrays, but hash tables were
+ * thought to use too much space. <p>
+ * Adjoining elements one at a time copies the array each time, so
+ * large sets should be made with a SetBuilder. <p>
  * Declaring this class final seems to expose a compiler error when
  * using the -O switch.  Code running as an applet in the appletviewer
  * produce 
@@ -35,18 +42,31 @@ Boston, MA 02111-1307, USA.
  *    java.lang.IllegalAccessError: set.Set.t
  *</pre>
  * @see Element
+ * @see SetBuilder
  * @version October 1995
  * @author John D. Ramsdell
  */
 public class Set implements Element {
-  private List t;		// List of elements in the set.
+  private static final Element none[] = new Element[0];
+  private static final Set empty_set = new Set();
+
+  private Element t[];		// Sorted array of elements,
+  private int lo, hi;		// of which those from lo to hi - 1
+				// are in the set.
   
   public Set() {
-    t = null;
+    this(none, 0, 0);
   }
 
-  private Set(List t) {
+  /*
+   * Make a set of the elements from lo to hi - 1 of an array.  Those
+   * elements must be sorted without repeats, and must never change.
+   * @see SetBuilder
+   */
+  Set(Element t[], int lo, int hi) {
     this.t = t;
+    this.lo = lo;
+    this.hi = hi;
   }
 
   /**
@@ -54,7 +74,82 @@ public class Set implements Element {
    * @return 		true if this is the empty set
    */
   public boolean empty() {
-    return t == null;
+    return lo == hi;
+  }
+
+  /*
+   * Find an element by binary search between l and h - 1.  Returns
+   * the index of the element if it is there, and otherwise -(i + 1),
+   * where i is the index at which the element would be inserted.
+   */
+  private int search(Element e, int l, int h) {
+    while (l < h) {
+      int m = (l + h) >>> 1;
+      Element e0 = t[m];
+
+      if (e.same(e0))
+	return m;
+      else if (e.less(e0))
+	h = m;
+      else
+	l = m + 1;
+    }
+    return -(l + 1);
+  }
+
+  private int search(Element e) {
+    return search(e, lo, hi);
+  }
+
+  /*
+   * Find an element at or after index from, where all elements
+   * before from are known to be less than it.  The search gallops
+   * forward in steps that double, and then searches the last step,
+   * so finding each element of a small set in a large one costs
+   * little more than a binary search, while finding each element of
+   * a set of similar size costs about one step.  Returns the same
+   * as search.
+   */
+  private int find(Element e, int from) {
+    int l = from;
+    int h = from;
+    for (int step = 1; h < hi; step <<= 1) {
+      Element e0 = t[h];
+
+      if (e.same(e0))
+	return h;
+      else if (e.less(e0))
+	break;
+      l = h + 1;
+      h = hi - l > step ? l + step : hi;
+    }
+    return search(e, l, h);
+  }
+
+  /*
+   * The set operations below walk the smaller of two sets, and find
+   * each of its elements in the larger set.  They are iterative, and
+   * allocate nothing when the result is one of the sets given.
+   * Otherwise, the size of the result is counted first, so that its
+   * array is allocated once and at its final size.
+   */
+
+  /* Count the elements in both this set and s. */
+  private int common(Set s) {
+    Set small = card() <= s.card() ? this : s;
+    Set big = small == this ? s : this;
+    int k = 0;
+    int i = big.lo;
+    for (int j = small.lo; j < small.hi && i < big.hi; j++) {
+      int f = big.find(small.t[j], i);
+      if (f >= 0) {
+	k++;
+	i = f + 1;
+      }
+      else
+	i = -(f + 1);
+    }
+    return k;
   }
 
   /**
@@ -63,52 +158,36 @@ public class Set implements Element {
    * @return 		the new set
    */
   public Set adjoin(Element e) {
-    if (list_member(e, t))
+    int i = search(e);
+    if (i >= 0)
       return this;
-    else
-      return new Set(list_adjoin(e, t));
+    i = -(i + 1);
+    int n = i - lo;
+    Element t0[] = new Element[hi - lo + 1];
+    System.arraycopy(t, lo, t0, 0, n);
+    t0[n] = e;
+    System.arraycopy(t, i, t0, n + 1, hi - i);
+    return new Set(t0, 0, t0.length);
   }      
 
-  private static List list_adjoin(Element e, List t) {
-    if (t == null)
-      return new List(e, t);
-    else {
-      Element e0 = t.first();
-    
-      if (e.same(e0))
-	return t;		// e already in the list
-      else if (e.less(e0))
-	return new List(e, t);
-      else
-	return new List(e0, list_adjoin(e, t.but_first()));
-    }
-  }
-
   /**
    * Remove an element from a set.
    * @param e		the element to remove
    * @return 		the new set
    */
   public Set remove(Element e) {
-    if (!list_member(e, t))
+    int i = search(e);
+    if (i < 0)
       return this;
-    else
-      return new Set(list_remove(e, t));
-  }
-
-  private static List list_remove(Element e, List t) {
-    if (t == null)
-      return t;
-    else {
-      Element e0 = t.first();
-
-      if (e.same(e0))
-	return t.but_first();
-      else if (e.less(e0))
-	return t;		// e not in the list
-      else
-	return new List(e0, list_remove(e, t.but_first()));
-    }
+    else if (i == lo)
+      return new Set(t, lo + 1, hi);
+    else if (i == hi - 1)
+      return new Set(t, lo, hi - 1);
+    int n = i - lo;
+    Element t0[] = new Element[hi - lo - 1];
+    System.arraycopy(t, lo, t0, 0, n);
+    System.arraycopy(t, i + 1, t0, n, hi - i - 1);
+    return new Set(t0, 0, t0.length);
   }
 
   /**
@@ -117,51 +196,24 @@ public class Set implements Element {
    * @return 		true if element is in the set
    */
   public boolean member(Element e) {
-    return list_member(e, t);
+    return search(e) >= 0;
   }      
 
-  private static boolean list_member(Element e, List t) {
-    for (; t != null; t = t.but_first()) {
-      Element e0 = t.first(); 
-
-      if (e.same(e0))
-	return true;
-      else if (e.less(e0))
-	return false;
-    }
-    return false;
-  }
-
-  /* When implementations are known to be tail recursive,
-     you can write list_member in this straightforward way.
-  private static boolean list_member(Element e, List t) {
-    if (t == null)
-      return false;
-    else {
-      Element e0 = t.first(); 
-
-      if (e.same(e0))
-	return true;
-      else if (e.less(e0))
-	return false;
-      else
-	return list_member(e, t.but_first());
-    }
-  }
-  */
-
   /**
    * Is this set a proper subset of another set?
    * @param s		the other set
    * @return 		true if this set is a proper subset of the other
    */
   public boolean proper_subset(Set s) {
-    return list_subset(t, s.t) && !list_subset(s.t, t);
-  }
-
-  private static boolean list_subset(List t0, List t1) {
-    for (; t0 != null; t0 = t0.but_first())
-      if (!list_member(t0.first(), t1)) return false;
+    if (card() >= s.card())
+      return false;
+    int i = s.lo;
+    for (int j = lo; j < hi; j++) {
+      int f = s.find(t[j], i);
+      if (f < 0)
+	return false;
+      i = f + 1;
+    }
     return true;
   }
 
@@ -171,10 +223,27 @@ public class Set implements Element {
    * @return 		the union of this set and the other
    */
   public Set union(Set s) {
-    List t1 = t;
-    for (List t0 = s.t; t0 != null; t0 = t0.but_first())
-      t1 = list_adjoin(t0.first(), t1);
-    return new Set(t1);
+    int n = card() + s.card() - common(s);
+    if (n == card())
+      return this;
+    else if (n == s.card())
+      return s;
+    Set small = card() <= s.card() ? this : s;
+    Set big = small == this ? s : this;
+    Element t0[] = new Element[n];
+    n = 0;
+    int i = big.lo;
+    for (int j = small.lo; j < small.hi; j++) {
+      Element e = small.t[j];
+      int f = big.find(e, i);
+      int k = f >= 0 ? f : -(f + 1);
+      System.arraycopy(big.t, i, t0, n, k - i);
+      n += k - i;
+      t0[n++] = f >= 0 && big == this ? big.t[f] : e;
+      i = f >= 0 ? f + 1 : k;
+    }
+    System.arraycopy(big.t, i, t0, n, big.hi - i);
+    return new Set(t0, 0, t0.length);
   }
 
   /**
@@ -183,34 +252,29 @@ public class Set implements Element {
    * @return 		the intersection of this set and the other
    */
   public Set intersect(Set s) {
-    return new Set(list_intersect(t, s.t));
-  }
-
-  private static List list_intersect(List t0, List t1) {
-    for (; t0 != null; t0 = t0.but_first()) {
-      Element e = t0.first();
-      
-      if (list_member(e, t1))
-	return new List(e, list_intersect(t0.but_first(), t1));
-    }
-    return null;
-  }
-
-  /* When implementations are known to be tail recursive,
-     you can write list_intersect in this straightforward way.
-  private static List list_intersect(List t0, List t1) {
-    if (t0 == null)
-      return t0;
-    else {
-      Element e = t0.first();
-      
-      if (list_member(e, t1))
-	return new List(e, list_intersect(t0.but_first(), t1));
+    int n = common(s);
+    if (n == card())
+      return this;
+    else if (n == 0)
+      return empty_set;
+    else if (n == s.card())
+      return s;
+    Set small = card() <= s.card() ? this : s;
+    Set big = small == this ? s : this;
+    Element t0[] = new Element[n];
+    n = 0;
+    int i = big.lo;
+    for (int j = small.lo; j < small.hi && n < t0.length; j++) {
+      int f = big.find(small.t[j], i);
+      if (f >= 0) {
+	t0[n++] = big == this ? big.t[f] : small.t[j];
+	i = f + 1;
+      }
       else
-	return list_intersect(t0.but_first(), t1);
+	i = -(f + 1);
     }
+    return new Set(t0, 0, t0.length);
   }
-  */
 
   /**
    * Set difference.
@@ -218,10 +282,37 @@ public class Set implements Element {
    * @return 		the set difference of this set and the other
    */
   public Set set_difference(Set s) {
-    List t1 = t;
-    for (List t0 = s.t; t0 != null; t0 = t0.but_first())
-      t1 = list_remove(t0.first(), t1);
-    return new Set(t1);
+    int n = card() - common(s);
+    if (n == card())
+      return this;
+    else if (n == 0)
+      return empty_set;
+    Element t0[] = new Element[n];
+    n = 0;
+    if (card() <= s.card()) {	// Keep the elements not found in s
+      int i = s.lo;
+      for (int j = lo; j < hi; j++) {
+	int f = s.find(t[j], i);
+	if (f >= 0)
+	  i = f + 1;
+	else {
+	  t0[n++] = t[j];
+	  i = -(f + 1);
+	}
+      }
+    }
+    else {			// Copy the runs between elements of s
+      int i = lo;
+      for (int j = s.lo; j < s.hi; j++) {
+	int f = find(s.t[j], i);
+	int k = f >= 0 ? f : -(f + 1);
+	System.arraycopy(t, i, t0, n, k - i);
+	n += k - i;
+	i = f >= 0 ? f + 1 : k;
+      }
+      System.arraycopy(t, i, t0, n, hi - i);
+    }
+    return new Set(t0, 0, t0.length);
   }
 
   /**
@@ -229,21 +320,22 @@ public class Set implements Element {
    * @return 		some element
    */
   public Element first() {
-    if (t == null)
+    if (lo == hi)
       return null;
     else 
-      return t.first();
+      return t[lo];
   }
 
   /**
    * The set minus its first element.
+   * The new set shares its elements with this set.
    * @return 		the set with the first element removed
    */
   public Set but_first() {
-    if (t == null)
+    if (lo == hi)
       return null;
     else 
-      return new Set(t.but_first());
+      return new Set(t, lo + 1, hi);
   }
 
   /**
@@ -251,10 +343,7 @@ public class Set implements Element {
    * @return 		the number of elments that are in the set
    */
   public int card() {
-    int c = 0;
-    for (List t0 = t; t0 != null; t0 = t0.but_first())
-      c++;
-    return c;
+    return hi - lo;
   }
 
   /**
@@ -262,83 +351,41 @@ public class Set implements Element {
    * @see Element#same
    */
   public boolean same(Element e) {
-    return e != null
-      && e instanceof Set
-	&& list_same(t, ((Set)e).t);
-  }
-
-  private static boolean list_same(List t0, List t1) {
-    for (;;)
-      if (t0 == null)
-	return t1 == null;
-      else
-	if (t1 == null || !t0.first().same(t1.first()))
-	  return false;
-	else {
-	  t0 = t0.but_first();
-	  t1 = t1.but_first();
-	}
-  }
-
-  /* When implementations are known to be tail recursive,
-     you can write list_same in this straightforward way.
-  private static boolean list_same(List t0, List t1) {
-    if (t0 == null)
-      return t1 == null;
-    else
-      return t1 != null
-	&& t0.first().same(t1.first())
-	  && list_same(t0.but_first(), t1.but_first());
+    if (e == null || !(e instanceof Set))
+      return false;
+    Set s = (Set)e;
+    if (card() != s.card())
+      return false;
+    else if (t == s.t && lo == s.lo)
+      return true;
+    for (int i = lo, j = s.lo; i < hi; i++, j++)
+      if (!t[i].same(s.t[j]))
+	return false;
+    return true;
   }
-  */
 
   /**
    * Is this element less than some other element?
+   * Sets are ordered lexicographically.
    * @see Element#less
    */
   public boolean less(Element e) {
     if (e == null || !(e instanceof Set))
       return false;
-    else
-      return list_less(t, ((Set)e).t);
-  }
-
-  private static boolean list_less(List t0, List t1) {
-    for (;;) 
-      if (t0 == null)
-	return t1 != null;
-      else if (t1 == null)
+    Set s = (Set)e;
+    for (int i = lo, j = s.lo;; i++, j++)
+      if (i == hi)
+	return j != s.hi;
+      else if (j == s.hi)
 	return false;
       else {
-	Element e0 = t0.first();
-	Element e1 = t1.first();
+	Element e0 = t[i];
+	Element e1 = s.t[j];
       
 	if (e0.less(e1))
 	  return true;
 	else if (!e0.same(e1))
 	  return false;
-	else {
-	  t0 = t0.but_first();
-	  t1 = t1.but_first();
-	}
       }
   }
-
-  /* When implementations are known to be tail recursive,
-     you can write list_intersect in this straightforward way.
-  private static boolean list_less(List t0, List t1) {
-    if (t0 == null)
-      return t1 != null;
-    else if (t1 == null)
-      return false;
-    else {
-      Element e0 = t0.first();
-      Element e1 = t1.first();
-      
-      return e0.less(e1)
-	|| e0.same(e1)
-	  && list_less(t0.but_first(), t1.but_first());
-    }
-  }
-  */
 }
@@ -0,0 +1,110 @@
+package set;
+
+/* Copyright (C) 1995 John D. Ramsdell
+
+This file is part of Programmer's Minesweeper (PGMS).
+
+PGMS is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2, or (at your option)
+any later version.
+
+PGMS is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PGMS; see the file COPYING.  If not, write to
+the Free Software Foundation, 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+*/
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The class SetBuilder makes a set from many elements at once.
+ * Elements are collected in any order, and are sorted and freed of
+ * repeats only when the set is made.  Making a set of n elements
+ * takes time proportional to n log n, and to n when the elements
+ * were added in ascending or descending order, as they are by a scan
+ * over a grid of points. <p>
+ * A builder may be used again once its set has been made.
+ * @see Set
+ */
+public final class SetBuilder {
+  private Element t[];		// Elements added so far,
+  private int n;		// of which there are n
+  private int capacity;		// Initial length of t
+
+  /* Orders elements as sets do. */
+  private static final Comparator<Element> order = new Comparator<Element>() {
+      public int compare(Element e0, Element e1) {
+	if (e0.same(e1))
+	  return 0;
+	else if (e0.less(e1))
+	  return -1;
+	else
+	  return 1;
+      }
+    };
+
+  /**
+   * Create a builder with no elements.
+   */
+  public SetBuilder() {
+    this(16);
+  }
+
+  /**
+   * Create a builder with room for a number of elements.
+   * More elements may be added; the room grows as needed.
+   * @param capacity	the expected number of elements
+   */
+  public SetBuilder(int capacity) {
+    this.capacity = Math.max(1, capacity);
+  }
+
+  /**
+   * Add an element to the set being built.
+   * @param e		the element to add
+   * @return 		this builder
+   */
+  public SetBuilder adjoin(Element e) {
+    if (t == null)
+      t = new Element[capacity];
+    else if (n == t.length)
+      t = Arrays.copyOf(t, 2 * n);
+    t[n++] = e;
+    return this;
+  }
+
+  /**
+   * Make the set of the elements added since the builder was
+   * created or last made a set, and empty the builder.
+   * @return 		the set
+   */
+  public Set make() {
+    Element t0[] = t;
+    int n0 = n;
+    t = null;
+    n = 0;
+    if (n0 == 0)
+      return new Set();
+    boolean sorted = true;	// Strictly ascending already?
+    for (int i = 1; i < n0 && sorted; i++)
+      sorted = t0[i - 1].less(t0[i]);
+    if (!sorted) {
+      Arrays.sort(t0, 0, n0, order); // A stable merge sort, which
+      int k = 1;		     // takes one pass over sorted runs
+      for (int i = 1; i < n0; i++)   // Drop repeats
+	if (!t0[i].same(t0[k - 1]))
+	  t0[k++] = t0[i];
+      n0 = k;
+    }
+    if (n0 < t0.length)
+      t0 = Arrays.copyOf(t0, n0);
+    return new Set(t0, 0, n0);
+  }
+}
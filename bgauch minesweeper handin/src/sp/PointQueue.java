@@ -0,0 +1,99 @@
+package sp;
+
+/* Copyright (C) 1995 John D. Ramsdell
+
+This file is part of Programmer's Minesweeper (PGMS).
+
+PGMS is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2, or (at your option)
+any later version.
+
+PGMS is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PGMS; see the file COPYING.  If not, write to
+the Free Software Foundation, 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+*/
+
+/**
+ * The class PointQueue implements a queue of points on a board, from
+ * which points are taken in the order of a PointSet, first point
+ * first.  The point (x, y) is queued as the cell number
+ * y * columns + x, and a point is queued at most once.  A point that
+ * has been taken is no longer queued, and may be added again. <p>
+ * Unlike a PointSet, the queue is changed in place.  It is a bitset
+ * of the whole board, with a summary bitset in which bit i is set
+ * when word i has a point.  The first point is found from a bound
+ * that moves back only as far as the earliest point added, so when
+ * points are added near the points taken, adding a point and taking
+ * the first point take constant time, however large the board.
+ * @see PointSet
+ */
+public final class PointQueue {
+  private final int c;		// Columns in the board
+  private final long w[];	// Bit i is set when cell i is queued
+  private final long s[];	// Bit i is set when w[i] is not zero
+  private int lo;		// No word before word lo has a point
+  private int n;		// Number of points queued
+
+  /**
+   * Create an empty queue for a board.
+   * @param rows	rows in the board
+   * @param columns	columns in the board
+   */
+  public PointQueue(int rows, int columns) {
+    c = columns;
+    w = new long[(int)(((long)rows * columns + 63) >>> 6)];
+    s = new long[(w.length + 63) >>> 6];
+  }
+
+  /**
+   * Is the queue empty?
+   */
+  public boolean empty() {
+    return n == 0;
+  }
+
+  /**
+   * Add a point to the queue, unless it is queued already.
+   * The point must be on the board.
+   * @param x		the column of the point
+   * @param y		the row of the point
+   */
+  public void add(int x, int y) {
+    int b = y * c + x;
+    int i = b >>> 6;
+    if ((w[i] & (1L << b)) != 0)
+      return;
+    w[i] |= 1L << b;
+    s[i >>> 6] |= 1L << i;
+    if (i < lo)
+      lo = i;
+    n++;
+  }
+
+  /**
+   * Take the first point from a queue that is not empty.
+   * @return		the cell number of the point
+   */
+  public int poll() {
+    int k = lo >>> 6;
+    long t = s[k] & (-1L << lo);
+    while (t == 0)		// Find the first word with a point
+      t = s[++k];
+    int i = (k << 6) + Long.numberOfTrailingZeros(t);
+    long x = w[i];
+    int b = (i << 6) + Long.numberOfTrailingZeros(x);
+    w[i] = x &= x - 1;		// Clear the first point
+    if (x == 0)
+      s[k] &= ~(1L << i);
+    lo = i;
+    n--;
+    return b;
+  }
+}
@@ -0,0 +1,444 @@
+package sp;
+
+/* Copyright (C) 1995 John D. Ramsdell
+
+This file is part of Programmer's Minesweeper (PGMS).
+
+PGMS is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 2, or (at your option)
+any later version.
+
+PGMS is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PGMS; see the file COPYING.  If not, write to
+the Free Software Foundation, 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+*/
+
+import set.*;
+
+/**
+ * The class PointSet implements immutable sets of points on a board.
+ * It offers the operations of set.Set, but stores a set as a bitset
+ * in which the point (x, y) is bit y * columns + x, so points are in
+ * the same order as in a set.Set.  Union, intersection, difference
+ * and the subset test work on 64 points at a time. <p>
+ * Only the words from the first to the last word with a point in the
+ * set are kept, so a set of points near one another is a few words
+ * long, whatever the size of the board.  Sets made by but_first share
+ * the words of the original set. <p>
+ * All point sets combined with one another must be made with the
+ * same number of columns.  Point sets can be used as elements of sets.
+ * @see set.Set
+ * @see Point
+ */
+public final class PointSet implements Element {
+  private static final long none[] = new long[0];
+
+  private final int c;		// Columns in the board
+  private final long w[];	// Words of the bitset, starting
+  private final int base;	// at word number base.
+  private final int lo;		// Bits before lo are not in the set
+  private final int n;		// Number of points in the set
+  private final int first;	// Bit of the first point, or -1
+
+  /**
+   * Create an empty set of points.
+   * @param columns	columns in the board
+   */
+  public PointSet(int columns) {
+    this(columns, none, 0, 0, 0);
+  }
+
+  /**
+   * Create a set from cell numbers.  The point (x, y) has cell
+   * number y * columns + x.  Cells may be given in any order,
+   * and more than once.
+   * @param columns	columns in the board
+   * @param cells	cell numbers of the points
+   * @param k		how many of the cell numbers to use
+   */
+  public PointSet(int columns, int cells[], int k) {
+    this(columns, words(cells, k), base(cells, k));
+  }
+
+  private static int base(int cells[], int k) {
+    int b = Integer.MAX_VALUE;
+    for (int i = 0; i < k; i++)
+      b = Math.min(b, cells[i] >>> 6);
+    return k == 0 ? 0 : b;
+  }
+
+  private static long[] words(int cells[], int k) {
+    if (k == 0)
+      return none;
+    int b = base(cells, k);
+    int e = b;
+    for (int i = 0; i < k; i++)
+      e = Math.max(e, cells[i] >>> 6);
+    long w[] = new long[e - b + 1];
+    for (int i = 0; i < k; i++)
+      w[(cells[i] >>> 6) - b] |= 1L << cells[i];
+    return w;
+  }
+
+  /* Make a set from words, dropping the zero words at either end. */
+  private PointSet(int columns, long w[], int base) {
+    this(columns, trim(w), base + leading_zeros(w), count(w));
+  }
+
+  private PointSet(int columns, long w[], int base, int n) {
+    this(columns, w, base, base << 6, n);
+  }
+
+  private PointSet(int columns, long w[], int base, int lo, int n) {
+    c = columns;
+    this.w = w;
+    this.base = base;
+    this.lo = lo;
+    this.n = n;
+    first = n == 0 ? -1 : next(lo);
+  }
+
+  private static int leading_zeros(long w[]) {
+    int i = 0;
+    while (i < w.length && w[i] == 0)
+      i++;
+    return i == w.length ? 0 : i;
+  }
+
+  private static long[] trim(long w[]) {
+    int i = 0;
+    int j = w.length;
+    while (i < j && w[i] == 0)
+      i++;
+    while (j > i && w[j - 1] == 0)
+      j--;
+    if (i == 0 && j == w.length)
+      return w;
+    else if (i == j)
+      return none;
+    long t[] = new long[j - i];
+    System.arraycopy(w, i, t, 0, j - i);
+    return t;
+  }
+
+  private static int count(long w[]) {
+    int k = 0;
+    for (long x : w)
+      k += Long.bitCount(x);
+    return k;
+  }
+
+  /* The first bit at or after bit b in a set that is not empty. */
+  private int next(int b) {
+    int i = b >>> 6;
+    long x = w[i - base] & (-1L << b);
+    while (x == 0)
+      x = w[++i - base];
+    return (i << 6) + Long.numberOfTrailingZeros(x);
+  }
+
+  /* Word number i of the set. */
+  private long word(int i) {
+    int k = i - base;
+    if (k < 0 || k >= w.length)
+      return 0;
+    else if (i > lo >>> 6)
+      return w[k];
+    else if (i == lo >>> 6)
+      return w[k] & (-1L << lo);
+    else
+      return 0;
+  }
+
+  private int start() {		// Number of the first word
+    return lo >>> 6;
+  }
+
+  private int end() {		// One more than the last word
+    return base + w.length;
+  }
+
+  private int bit(Element e) {
+    Point p = (Point)e;
+    return p.y() * c + p.x();
+  }
+
+  /**
+   * Provide the number of columns in the board.
+   */
+  public int columns() {
+    return c;
+  }
+
+  /**
+   * Is this the empty set?
+   * @see set.Set#empty
+   */
+  public boolean empty() {
+    return n == 0;
+  }
+
+  /**
+   * Set cardinality.
+   * @see set.Set#card
+   */
+  public int card() {
+    return n;
+  }
+
+  /**
+   * Pick the first point from the set.
+   * @see set.Set#first
+   */
+  public Point first() {
+    if (n == 0)
+      return null;
+    else
+      return new Point(first % c, first / c);
+  }
+
+  /**
+   * Pick a point by its position in the set.  Whole words of points
+   * are skipped at a time, so this is faster than calling but_first
+   * k times.
+   * @param k		a nonnegative number less than card()
+   * @return		the point with k points before it in the set
+   */
+  public Point nth(int k) {
+    if (k < 0 || k >= n)
+      throw new IndexOutOfBoundsException("no point " + k);
+    int i = start();
+    long x = word(i);
+    for (int b = Long.bitCount(x); k >= b; b = Long.bitCount(x)) {
+      k -= b;
+      x = word(++i);
+    }
+    for (; k > 0; k--)
+      x &= x - 1;		// Clear the lowest point
+    int b = (i << 6) + Long.numberOfTrailingZeros(x);
+    return new Point(b % c, b / c);
+  }
+
+  /**
+   * The set minus its first point.
+   * The new set shares its words with this set.
+   * @see set.Set#but_first
+   */
+  public PointSet but_first() {
+    if (n == 0)
+      return null;
+    else if (n == 1)
+      return new PointSet(c);
+    else
+      return new PointSet(c, w, base, first + 1, n - 1);
+  }
+
+  /**
+   * Is a point a member of this set?
+   * @see set.Set#member
+   */
+  public boolean member(Element e) {
+    int b = bit(e);
+    return (word(b >>> 6) & (1L << b)) != 0;
+  }
+
+  /**
+   * Adjoin a point to a set.
+   * @see set.Set#adjoin
+   */
+  public PointSet adjoin(Element e) {
+    int b = bit(e);
+    if (member(e))
+      return this;
+    int i = b >>> 6;
+    int s = n == 0 ? i : Math.min(i, start());
+    long t[] = new long[Math.max(i + 1, n == 0 ? i + 1 : end()) - s];
+    for (int j = s; j < s + t.length; j++)
+      t[j - s] = word(j);
+    t[i - s] |= 1L << b;
+    return new PointSet(c, t, s, n + 1);
+  }
+
+  /**
+   * Remove a point from a set.
+   * @see set.Set#remove
+   */
+  public PointSet remove(Element e) {
+    int b = bit(e);
+    if (!member(e))
+      return this;
+    else if (b == first)
+      return but_first();
+    int s = start();
+    long t[] = new long[end() - s];
+    for (int j = s; j < s + t.length; j++)
+      t[j - s] = word(j);
+    t[(b >>> 6) - s] &= ~(1L << b);
+    return new PointSet(c, t, s);
+  }
+
+  /**
+   * Is this set a proper subset of another set?
+   * @see set.Set#proper_subset
+   */
+  public boolean proper_subset(PointSet s) {
+    if (n >= s.n)
+      return false;
+    for (int i = start(); i < end(); i++)
+      if ((word(i) & ~s.word(i)) != 0)
+	return false;
+    return true;
+  }
+
+  /**
+   * Set union.
+   * @see set.Set#union
+   */
+  public PointSet union(PointSet s) {
+    if (s.n == 0)
+      return this;
+    else if (n == 0)
+      return s;
+    int a = Math.min(start(), s.start());
+    long t[] = new long[Math.max(end(), s.end()) - a];
+    for (int i = 0; i < t.length; i++)
+      t[i] = word(a + i) | s.word(a + i);
+    int k = count(t);
+    if (k == n)
+      return this;
+    else if (k == s.n)
+      return s;
+    else
+      return new PointSet(c, t, a, k);
+  }
+
+  /**
+   * Set intersection.
+   * @see set.Set#intersect
+   */
+  public PointSet intersect(PointSet s) {
+    int a = Math.max(start(), s.start());
+    int b = Math.min(end(), s.end());
+    if (n == 0 || s.n == 0 || a >= b)
+      return new PointSet(c);
+    long t[] = new long[b - a];
+    for (int i = 0; i < t.length; i++)
+      t[i] = word(a + i) & s.word(a + i);
+    return new PointSet(c, t, a);
+  }
+
+  /**
+   * Set difference.
+   * @see set.Set#set_difference
+   */
+  public PointSet set_difference(PointSet s) {
+    if (n == 0 || s.n == 0)
+      return this;
+    int a = start();
+    long t[] = new long[end() - a];
+    for (int i = 0; i < t.length; i++)
+      t[i] = word(a + i) & ~s.word(a + i);
+    if (count(t) == n)
+      return this;
+    else
+      return new PointSet(c, t, a);
+  }
+
+  /**
+   * Is this element equal to some other element?
+   * @see Element#same
+   */
+  public boolean same(Element e) {
+    if (e == null || !(e instanceof PointSet))
+      return false;
+    PointSet s = (PointSet)e;
+    if (n != s.n || first != s.first)
+      return false;
+    for (int i = start(); i < end(); i++)
+      if (word(i) != s.word(i))
+	return false;
+    return true;
+  }
+
+  /**
+   * Is this set equal to some other object?
+   * @see #same
+   */
+  public boolean equals(Object o) {
+    return o instanceof PointSet && same((PointSet)o);
+  }
+
+  /**
+   * A hash code for the set, which depends only on its points.
+   */
+  public int hashCode() {
+    int h = 0;
+    for (int i = start(); i < end(); i++) {
+      long x = word(i);
+      if (x != 0) {		// Mix the bits, as nearby sets
+	x += i;			// differ in only a few
+	x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+	x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+	h = 31 * h + (int)(x ^ (x >>> 33));
+      }
+    }
+    return h;
+  }
+
+  /**
+   * Is this element less than some other element?
+   * Point sets are ordered lexicographically, as sets are.
+   * @see Element#less
+   */
+  public boolean less(Element e) {
+    if (e == null || !(e instanceof PointSet))
+      return false;
+    PointSet s = (PointSet)e;
+    int a = n == 0 ? s.start() : s.n == 0 ? start()
+      : Math.min(start(), s.start());
+    int b = Math.max(n == 0 ? 0 : end(), s.n == 0 ? 0 : s.end());
+    for (int i = a; i < b; i++) {
+      long x = word(i);
+      long y = s.word(i);
+      if (x != y) {		// The first point in only one set
+	long d = Long.lowestOneBit(x ^ y); // decides, unless the
+	if ((x & d) != 0)		   // other set has no more
+	  return s.above(i, d);
+	else
+	  return !above(i, d);
+      }
+    }
+    return false;
+  }
+
+  /* Does this set have a point after bit d of word i? */
+  private boolean above(int i, long d) {
+    if ((word(i) & -(d << 1)) != 0)
+      return true;
+    for (int j = i + 1; j < end(); j++)
+      if (word(j) != 0)
+	return true;
+    return false;
+  }
+
+  /**
+   * Display the set on the standard output stream.
+   * Used only for debugging.
+   */
+  public void display() {
+    System.out.print("{");
+    for (PointSet s = this; !s.empty(); s = s.but_first()) {
+      s.first().display();
+      if (s.card() > 1)
+	System.out.print(", ");
+    }
+    System.out.print("}");
+  }
+}
@@ -21,7 +21,6 @@ Boston, MA 02111-1307, USA.
 */
 
 import map.*;
-import set.*;
 
 /**
  * The class SinglePointStrategy implements a PGMS strategy.
@@ -34,9 +33,10 @@ import set.*;
  * equals the number of marks near the point plus the number of 
  * unknowns near, the strategy infers that the near points whose status
  * is unknown contain mines.
- * <p> The implementation makes extensive use of sets.
+ * <p> The points to look at are kept in a queue, in which
+ * each point costs constant time however large the board.
  * @see Strategy
- * @see set.Set
+ * @see PointQueue
  * @version October 1995
  * @author John D. Ramsdell
  */
@@ -47,6 +47,7 @@ public final class SinglePointStrategy implements Strategy {
    * @see Strategy
    */
   public void play(Map m) {
+    PointQueue s = new PointQueue(m.rows(), m.columns());
     for (;;) {
       int y = m.pick(m.rows());
       int x = m.pick(m.columns());
@@ -54,7 +55,7 @@ public final class SinglePointStrategy implements Strategy {
       if (Map.BOOM == q)	// Opps! Bad guess
 	return;
       else if (q >= 0) {
-	apply(m, x, y);		// Try strategy at this point
+	apply(m, x, y, s);	// Try strategy at this point
 	if (m.done())
 	  return;		// We win!
       }
@@ -62,76 +63,64 @@ public final class SinglePointStrategy implements Strategy {
   }
 
   /* 
-   *This routine applies the Single Point Strategy. 
+   * This routine applies the Single Point Strategy.
+   * Queue s is an empty queue for the points to look at.
    */
-  private static void apply(Map m, int x, int y) {
-    Set s = new Set().adjoin(new Point(x, y));
-				// Set s is a set of probed points
+  private static void apply(Map m, int x, int y, PointQueue s) {
+    int c = m.columns();
+    s.add(x, y);		// Queue s is a queue of probed points
     while (!s.empty()) {
-      Point p = (Point)s.first();
-      s = s.but_first();
-      int i = p.x();
-      int j = p.y();
+      int p = s.poll();
+      int i = p % c;
+      int j = p / c;
       int q = m.look(i, j);
       if (q >= 0) {		// Then point p is probed and not a mine
-	int u = unknowns_near(m, i, j);
+	int n = m.neighborhood(i, j);
+	int unknowns = n & Map.NEAR_UNPROBED;
+	int u = Integer.bitCount(unknowns);
 	if (u > 0) {		// Then some near points are unknown
-	  int k = q - marks_near(m, i, j);
+	  int k = q - Integer.bitCount(n & Map.NEAR_MARKED);
 	  if (k == 0)		// Then all near unknowns do not contain mines
-	    s = probe_around(m, i, j, s);
+	    probe_around(m, i, j, unknowns, s);
 	  else if (k == u)	// Then all near unknowns contain mines
-	    s = mark_around(m, i, j, s);
+	    mark_around(m, i, j, unknowns, s);
 	}
       }
     }
   }
   
-  private static int unknowns_near(Map m, int x, int y) {
-    int u = 0;
-    for (int j = y - 1; j < y + 2; j++)
-      for (int i = x - 1; i < x + 2; i++)
-	if (Map.UNPROBED == m.look(i, j)) u++;
-    return u;
-  }
-  
-  private static int marks_near(Map m, int x, int y) {
-    int u = 0;
-    for (int j = y - 1; j < y + 2; j++)
-      for (int i = x - 1; i < x + 2; i++)
-	if (Map.MARKED == m.look(i, j)) u++;
-    return u;
-  }
-  
   /*
    * After probing, adjoin all unprobed points near the newly 
    * probed point for future consideration by the strategy.
+   * Bit k of unknowns is set when the k-th point near (x, y)
+   * is unprobed.
+   * @see Map#neighborhood
    */
-  private static Set probe_around(Map m, int x, int y, Set s) {
-    for (int j = y - 1; j < y + 2; j++)
-      for (int i = x - 1; i < x + 2; i++)
-	if (Map.UNPROBED == m.look(i, j))
-	  m.probe(i, j);
-    return adjoin_around(m, x, y, s);
+  private static void probe_around(Map m, int x, int y, int unknowns,
+				   PointQueue s) {
+    for (int k = 0; k < 9; k++)
+      if ((unknowns & (1 << k)) != 0)
+	m.probe(x - 1 + k % 3, y - 1 + k / 3);
+    adjoin_around(m, x, y, s);
   }
   
   /*
    * After marking, adjoin all unprobed points near the mark
    * for future consideration by the strategy.
    */
-  private static Set mark_around(Map m, int x, int y, Set s) {
-    for (int j = y - 1; j < y + 2; j++)
-      for (int i = x - 1; i < x + 2; i++)
-	if (Map.UNPROBED == m.look(i, j))
-	  m.mark(i, j);
-    return adjoin_around(m, x, y, s);
+  private static void mark_around(Map m, int x, int y, int unknowns,
+				  PointQueue s) {
+    for (int k = 0; k < 9; k++)
+      if ((unknowns & (1 << k)) != 0)
+	m.mark(x - 1 + k % 3, y - 1 + k / 3);
+    adjoin_around(m, x, y, s);
   }
   
-  private static Set adjoin_around(Map m, int x, int y, Set s) {
+  private static void adjoin_around(Map m, int x, int y, PointQueue s) {
     for (int j = y - 2; j < y + 3; j++)
       for (int i = x - 2; i < x + 3; i++)
 	if (m.look(i, j) >= 0)
-	  s = s.adjoin(new Point(i, j));
-    return s;
+	  s.add(i, j);
   }
 }
 